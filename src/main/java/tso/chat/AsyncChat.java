@@ -0,0 +1,37 @@
+package tso.chat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link Chat}.
+ * <p>
+ * Every method returns immediately with a future which is completed when the underlying exchange with the chat
+ * server is done. Calls made on the same instance are executed one after another in the order they were made,
+ * because a chat session can only have one request in flight. Different instances share nothing and can run
+ * in parallel on the same executor.
+ * <p>
+ * Cancelling a returned future aborts the HTTP request of that call if it is already running.
+ * Failures are reported through the future: {@link tso.chat.exceptions.BadCredentialsException} and
+ * {@link tso.chat.exceptions.UplayDownException} from {@link #connect()},
+ * {@link tso.chat.exceptions.DeliveryException} from {@link #sendMessage(SentMessage)} when the message was never
+ * acknowledged,
+ * {@link java.util.concurrent.TimeoutException} when a call takes longer than the configured timeout.
+ */
+public interface AsyncChat {
+    /**
+     * @return the name of the player which is resolved at the authorization step
+     */
+    CompletableFuture<String> connect();
+    CompletableFuture<String> connect(StageListener stageListener);
+    CompletableFuture<Map<String, Status>> getFriendsAndStatusFromServer();
+    CompletableFuture<List<ChatMessage>> bindChat(String chatName);
+    CompletableFuture<Map<String, List<ChatMessage>>> bindChats(Collection<String> chatNames);
+    CompletableFuture<Map<String, List<ChatMessage>>> bindChannels(Collection<Channel> channels);
+    CompletableFuture<ChatMessage> getNewMessage();
+    CompletableFuture<Void> sendMessage(SentMessage message);
+    CompletableFuture<Void> restart();
+
+}
@@ -0,0 +1,187 @@
+package tso.chat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * {@link AsyncChat} implementation which runs the blocking {@link Connection} calls on a caller supplied executor.
+ * <p>
+ * Calls are chained one after another per instance, so a small executor can serve many sessions: a thread is only
+ * taken while a request of some session is actually in flight.
+ */
+public class AsyncChatImpl implements AsyncChat {
+    // one timer thread for all sessions, it only completes futures which ran out of time
+    private static final ScheduledExecutorService TIMER = createTimer();
+
+    private final Connection connection;
+    private final Chat chat;
+    private final Executor executor;
+    private final long timeoutMillis;
+
+    // the last call submitted on this session, the next one starts when it is done
+    private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+    /**
+     * @param timeoutMillis  maximum duration of a single call from the moment it starts running, the time it waits
+     * for earlier calls or a thread of the executor is not counted; 0 means no timeout
+     */
+    public AsyncChatImpl(String email, String password, Region region, Executor executor, long timeoutMillis) {
+        this(new Connection(email, password, region), executor, timeoutMillis);
+    }
+
+    public AsyncChatImpl(Connection connection, Executor executor, long timeoutMillis) {
+        this.connection = connection;
+        this.chat = new ChatImpl(connection);
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public CompletableFuture<String> connect() {
+        return submit(chat::connect);
+    }
+
+    @Override
+    public CompletableFuture<String> connect(StageListener stageListener) {
+        return submit(() -> chat.connect(stageListener));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Status>> getFriendsAndStatusFromServer() {
+        return submit(chat::getFriendsAndStatusFromServer);
+    }
+
+    @Override
+    public CompletableFuture<List<ChatMessage>> bindChat(String chatName) {
+        return submit(() -> chat.bindChat(chatName));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, List<ChatMessage>>> bindChats(Collection<String> chatNames) {
+        return submit(() -> chat.bindChats(chatNames));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, List<ChatMessage>>> bindChannels(Collection<Channel> channels) {
+        return submit(() -> chat.bindChannels(channels));
+    }
+
+    @Override
+    public CompletableFuture<ChatMessage> getNewMessage() {
+        return submit(chat::getNewMessage);
+    }
+
+    /**
+     * Sending is not chained after the other calls: the message is queued and the running chat loop
+     * iteration is interrupted to pick it up, exactly like {@link Connection#send(SentMessage)} does.
+     * The future completes when the server acknowledged the message.
+     */
+    @Override
+    public CompletableFuture<Void> sendMessage(SentMessage message) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            connection.send(message).whenComplete((delivery, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(null);
+                }
+            });
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> restart() {
+        return submit(() -> {
+            chat.restart();
+            return null;
+        });
+    }
+
+    private synchronized <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Call<T> task = new Call<>(call, result, timeoutMillis);
+        tail = tail.handleAsync((ignored, error) -> {
+            task.run();
+            return null;
+        }, executor);
+        // a cancelled or timed out call must not keep blocking the calls queued after it
+        result.whenComplete((r, e) -> {
+            if (e != null && task.interrupt()) {
+                connection.abort();
+            }
+        });
+        return result;
+    }
+
+    private static ScheduledExecutorService createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "tso-chat-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static class Call<T> implements Runnable {
+        private final Callable<T> call;
+        private final CompletableFuture<T> result;
+        private final long timeoutMillis;
+        private Thread thread;
+
+        private Call(Callable<T> call, CompletableFuture<T> result, long timeoutMillis) {
+            this.call = call;
+            this.result = result;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * Interrupts the thread running this call so the blocking {@link Connection} method gives up.
+         * @return true if the call was running
+         */
+        synchronized boolean interrupt() {
+            if (thread == null) {
+                return false;
+            }
+            thread.interrupt();
+            return true;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (result.isDone()) {
+                    // cancelled before it had a chance to start
+                    return;
+                }
+                thread = Thread.currentThread();
+            }
+            ScheduledFuture<?> timeout = null;
+            if (timeoutMillis > 0) {
+                // counts from now, not from submitting, a queued call has not used any of its time yet
+                timeout = TIMER.schedule(
+                        () -> result.completeExceptionally(new TimeoutException()), timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            try {
+                result.complete(call.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                synchronized (this) {
+                    thread = null;
+                    // the executor thread goes back to the pool, it must not stay interrupted
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+}
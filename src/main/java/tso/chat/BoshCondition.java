@@ -0,0 +1,57 @@
+package tso.chat;
+
+/**
+ * Reasons why a request to the chat server failed.
+ * <p>
+ * Conditions reported by the server in a terminating body (XEP-0124 section 17) end the session,
+ * it has to be bound again. The others are transient: the same session can be used after a pause.
+ */
+public enum BoshCondition {
+    /**
+     * The server terminated the session for a reason not listed below.
+     */
+    TERMINATE(true),
+    /**
+     * The session id or request id is unknown to the server, usually because the session timed out.
+     */
+    ITEM_NOT_FOUND(true),
+    /**
+     * The connection manager couldn't reach the XMPP server. Reported in a terminating body like the others,
+     * so the session is gone as well.
+     */
+    REMOTE_CONNECTION_FAILED(true),
+    /**
+     * The server responded with an HTTP status other than 200.
+     */
+    HTTP_ERROR(false),
+    /**
+     * The request didn't reach the server or the response was cut off.
+     */
+    NETWORK(false);
+
+    private final boolean sessionLost;
+
+    BoshCondition(boolean sessionLost) {
+        this.sessionLost = sessionLost;
+    }
+
+    /**
+     * @return true if the session is gone and has to be bound again
+     */
+    public boolean isSessionLost() {
+        return sessionLost;
+    }
+
+    /**
+     * @param condition  the value of the condition attribute of a terminating body
+     */
+    static BoshCondition fromTerminate(String condition) {
+        if ("item-not-found".equals(condition)) {
+            return ITEM_NOT_FOUND;
+        }
+        if ("remote-connection-failed".equals(condition)) {
+            return REMOTE_CONNECTION_FAILED;
+        }
+        return TERMINATE;
+    }
+}
@@ -37,6 +37,14 @@ public enum Channel {
         this.value=value;
     }
 
+    /**
+     * @param room  the room name as it appears in stanzas, e.g. global-2 or gc_123
+     * @return true if the room is one of the channels accessible to anyone: globals, help and trade
+     */
+    public static boolean isPublicRoom(String room) {
+        return room.startsWith("global") || room.equals(HELP.value) || room.equals(TRADE.value);
+    }
+
     @Override
     public String toString() {
         return value;
@@ -1,9 +1,9 @@
 package tso.chat;
 
-import javafx.beans.property.SimpleObjectProperty;
 import tso.chat.exceptions.BadCredentialsException;
 import tso.chat.exceptions.UplayDownException;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -15,9 +15,11 @@ public interface Chat {
      * @throws UplayDownException if the uplay server is down at the login step
      */
     String connect() throws BadCredentialsException, UplayDownException;
-    String connect(SimpleObjectProperty<Stage> stage) throws BadCredentialsException, UplayDownException;
+    String connect(StageListener stageListener) throws BadCredentialsException, UplayDownException;
     Map<String, Status> getFriendsAndStatusFromServer();
     List<ChatMessage> bindChat(String chatName);
+    Map<String, List<ChatMessage>> bindChats(Collection<String> chatNames);
+    Map<String, List<ChatMessage>> bindChannels(Collection<Channel> channels);
     ChatMessage getNewMessage();
     void sendMessage(SentMessage message);
     void restart();
@@ -1,9 +1,9 @@
 package tso.chat;
 
-import javafx.beans.property.SimpleObjectProperty;
 import tso.chat.exceptions.BadCredentialsException;
 import tso.chat.exceptions.UplayDownException;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -14,25 +14,25 @@ public class ChatImpl implements Chat {
         connection = new Connection(email, password, region);
     }
 
+    public ChatImpl(Connection connection) {
+        this.connection = connection;
+    }
+
     @Override
     public String connect() throws BadCredentialsException, UplayDownException {
-        connection.login();
-        connection.checkIn();
-        String name = connection.receiveAuthHash();
-        connection.bindAll();
-        return name;
+        return connect(stage -> { });
     }
 
     @Override
-    public String connect(SimpleObjectProperty<Stage> stage)
+    public String connect(StageListener stageListener)
             throws BadCredentialsException, UplayDownException {
-        stage.set(Stage.LOGIN);
+        stageListener.onStage(Stage.LOGIN);
         connection.login();
-        stage.set(Stage.CHECK_IN);
+        stageListener.onStage(Stage.CHECK_IN);
         connection.checkIn();
-        stage.set(Stage.AUTH);
+        stageListener.onStage(Stage.AUTH);
         String name = connection.receiveAuthHash();
-        stage.set(Stage.BIND);
+        stageListener.onStage(Stage.BIND);
         connection.bindAll();
         return name;
     }
@@ -47,6 +47,16 @@ public class ChatImpl implements Chat {
         return connection.bindChat(chatName);
     }
 
+    @Override
+    public Map<String, List<ChatMessage>> bindChats(Collection<String> chatNames) {
+        return connection.bindChats(chatNames);
+    }
+
+    @Override
+    public Map<String, List<ChatMessage>> bindChannels(Collection<Channel> channels) {
+        return connection.bindChannels(channels);
+    }
+
     @Override
     public ChatMessage getNewMessage() {
         return connection.chatLoop();
@@ -48,6 +48,10 @@ public class ChatMessage implements Message {
 
     public String getDate() { return dateTime.toLocalDate().format(DATE_FORMATTER); }
 
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+
     public String getText() {
         return text;
     }
@@ -0,0 +1,193 @@
+package tso.chat;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link HttpExchange} over an Apache HTTP client. The response is always read completely and closed.
+ * <p>
+ * Responses are negotiated with {@code Accept-Encoding: gzip, deflate} and decompressed while they are read from the
+ * socket, so the compressed body is never held in memory. The client must be built with
+ * {@code disableContentCompression()}, otherwise it decompresses on its own and the {@link CompressionStats} only see
+ * plain bodies.
+ * <p>
+ * Request bodies are gzipped only if enabled, as most BOSH servers do not accept them. A server which answers a
+ * compressed request with 415 Unsupported Media Type gets the request again uncompressed, and no further compressed
+ * ones.
+ */
+public class ClientExchange implements HttpExchange {
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    // smaller bodies do not get noticeably smaller
+    private static final int MIN_COMPRESSED_REQUEST = 256;
+
+    private final CloseableHttpClient httpclient;
+    private final CompressionStats stats = new CompressionStats();
+    private volatile boolean compressRequests;
+
+    public ClientExchange(CloseableHttpClient httpclient) {
+        this(httpclient, false);
+    }
+
+    /**
+     * @param compressRequests  gzip request bodies as long as the server accepts them
+     */
+    public ClientExchange(CloseableHttpClient httpclient, boolean compressRequests) {
+        this.httpclient = httpclient;
+        this.compressRequests = compressRequests;
+    }
+
+    @Override
+    public HttpResult execute(HttpUriRequest request) throws IOException {
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+        HttpEntity plain = compressRequests ? compress(request) : null;
+        HttpResult result = read(request);
+        if (plain != null && result.getStatusCode() == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) {
+            compressRequests = false;
+            request.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            ((HttpEntityEnclosingRequest) request).setEntity(plain);
+            result = read(request);
+        }
+        return result;
+    }
+
+    /**
+     * @return compression of the traffic of this exchange so far
+     */
+    public CompressionStats getCompressionStats() {
+        return stats;
+    }
+
+    public boolean isCompressingRequests() {
+        return compressRequests;
+    }
+
+    private HttpResult read(HttpUriRequest request) throws IOException {
+        try (CloseableHttpResponse response = httpclient.execute(request)) {
+            int code = response.getStatusLine().getStatusCode();
+            Header[] cookies = response.getHeaders("Set-Cookie");
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                stats.response(false, 0, 0, 0);
+                return new HttpResult(code, null, cookies);
+            }
+            Header encoding = entity.getContentEncoding();
+            String coding = encoding == null ? "identity" : encoding.getValue().trim().toLowerCase(Locale.ROOT);
+            boolean compressed = !coding.isEmpty() && !"identity".equals(coding);
+            long start = CompressionStats.cpuNanos();
+            CountingInputStream wire = new CountingInputStream(entity.getContent());
+            CountingInputStream decoded = compressed ? new CountingInputStream(decoder(coding, wire)) : wire;
+            String body = toString(decoded, charset(entity));
+            stats.response(compressed, wire.count, decoded.count, CompressionStats.cpuNanos() - start);
+            return new HttpResult(code, body, cookies);
+        }
+    }
+
+    private static InputStream decoder(String coding, InputStream in) throws IOException {
+        switch (coding) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(in);
+            case "deflate":
+                // RFC 7230 deflate is zlib wrapped, which is what InflaterInputStream expects
+                return new InflaterInputStream(in, new Inflater());
+            default:
+                throw new IOException("unsupported content encoding " + coding);
+        }
+    }
+
+    private static Charset charset(HttpEntity entity) {
+        ContentType type = ContentType.get(entity);
+        Charset charset = type == null ? null : type.getCharset();
+        return charset == null ? StandardCharsets.UTF_8 : charset;
+    }
+
+    private static String toString(InputStream in, Charset charset) throws IOException {
+        StringBuilder body = new StringBuilder(4096);
+        try (Reader reader = new InputStreamReader(in, charset)) {
+            char[] chars = new char[4096];
+            for (int n = reader.read(chars); n >= 0; n = reader.read(chars)) {
+                body.append(chars, 0, n);
+            }
+        }
+        return body.toString();
+    }
+
+    /**
+     * Replaces a large enough repeatable request body with its gzipped form.
+     * @return the original entity or null if the request is left alone
+     */
+    private HttpEntity compress(HttpUriRequest request) throws IOException {
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+            return null;
+        }
+        HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+        HttpEntity entity = enclosing.getEntity();
+        if (entity == null || !entity.isRepeatable() || entity.getContentLength() < MIN_COMPRESSED_REQUEST) {
+            return null;
+        }
+        long start = CompressionStats.cpuNanos();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) entity.getContentLength() / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            entity.writeTo(gzip);
+        }
+        ByteArrayEntity compressed = new ByteArrayEntity(bytes.toByteArray());
+        compressed.setContentType(entity.getContentType());
+        enclosing.setEntity(compressed);
+        request.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        stats.request(entity.getContentLength(), bytes.size(), CompressionStats.cpuNanos() - start);
+        return entity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpclient.close();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package tso.chat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte counts and CPU time of the HTTP compression of one session, see {@link ClientExchange}.
+ * <p>
+ * CPU time is measured per thread where the JVM supports it, so time spent waiting for the network is not counted;
+ * otherwise it falls back to wall time.
+ */
+public class CompressionStats {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicLong responseWireBytes = new AtomicLong();
+    private final AtomicLong responseBodyBytes = new AtomicLong();
+    private final AtomicLong requestBodyBytes = new AtomicLong();
+    private final AtomicLong requestWireBytes = new AtomicLong();
+    private final AtomicLong decompressNanos = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+
+    static long cpuNanos() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    void response(boolean compressed, long wireBytes, long bodyBytes, long nanos) {
+        responses.incrementAndGet();
+        responseWireBytes.addAndGet(wireBytes);
+        responseBodyBytes.addAndGet(bodyBytes);
+        if (compressed) {
+            compressedResponses.incrementAndGet();
+            decompressNanos.addAndGet(nanos);
+        }
+    }
+
+    void request(long bodyBytes, long wireBytes, long nanos) {
+        requestBodyBytes.addAndGet(bodyBytes);
+        requestWireBytes.addAndGet(wireBytes);
+        compressNanos.addAndGet(nanos);
+    }
+
+    public long getResponses() {
+        return responses.get();
+    }
+
+    /**
+     * @return how many responses came with a gzip or deflate content encoding
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    /**
+     * @return bytes of response bodies as received, before decompression
+     */
+    public long getResponseWireBytes() {
+        return responseWireBytes.get();
+    }
+
+    /**
+     * @return bytes of response bodies after decompression
+     */
+    public long getResponseBodyBytes() {
+        return responseBodyBytes.get();
+    }
+
+    /**
+     * @return decompressed to received bytes of the responses, 1 if nothing was compressed
+     */
+    public double getResponseRatio() {
+        long wire = responseWireBytes.get();
+        return wire == 0 ? 1 : (double) responseBodyBytes.get() / wire;
+    }
+
+    /**
+     * @return bytes of the compressed request bodies before compression
+     */
+    public long getRequestBodyBytes() {
+        return requestBodyBytes.get();
+    }
+
+    /**
+     * @return bytes of the compressed request bodies as sent
+     */
+    public long getRequestWireBytes() {
+        return requestWireBytes.get();
+    }
+
+    /**
+     * @return uncompressed to sent bytes of the requests, 1 if nothing was compressed
+     */
+    public double getRequestRatio() {
+        long wire = requestWireBytes.get();
+        return wire == 0 ? 1 : (double) requestBodyBytes.get() / wire;
+    }
+
+    public long getDecompressNanos() {
+        return decompressNanos.get();
+    }
+
+    public long getCompressNanos() {
+        return compressNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("responses %d (%d compressed), ratio %.2f, %d ms; requests ratio %.2f, %d ms",
+                getResponses(), getCompressedResponses(), getResponseRatio(), getDecompressNanos() / 1_000_000,
+                getRequestRatio(), getCompressNanos() / 1_000_000);
+    }
+}
@@ -3,33 +3,38 @@ package tso.chat;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 import org.dom4j.Document;
 import org.dom4j.Element;
-import org.dom4j.Node;
 import org.dom4j.io.SAXReader;
 import tso.chat.exceptions.BadCredentialsException;
+import tso.chat.exceptions.BoshException;
+import tso.chat.exceptions.DeliveryException;
 import tso.chat.exceptions.UplayDownException;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static org.apache.http.HttpStatus.SC_FORBIDDEN;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
 import static org.apache.http.HttpStatus.SC_OK;
 
 /**
@@ -42,10 +47,18 @@ import static org.apache.http.HttpStatus.SC_OK;
  *
  */
 
-public class Connection {
+public class Connection implements Closeable {
 
-    // one client per class to handle separate cookies
-    protected CloseableHttpClient httpclient = HttpClients.createDefault();
+    // the room part of a groupchat stanza sender, e.g. trade in from="trade@conference.w03chat01..."
+    private static final Pattern ROOM_PATTERN = Pattern.compile("from=[\"']([^@\"']+)@conference");
+    // the start tag of a stanza which may come from a room
+    private static final Pattern STANZA_PATTERN = Pattern.compile("<(message|presence)\\s[^>]*>");
+    private static final Pattern TERMINATE_PATTERN = Pattern.compile("<body[^>]*type=[\"']terminate[\"']");
+    private static final Pattern CONDITION_PATTERN = Pattern.compile("condition=[\"']([^\"']+)[\"']");
+
+    // executes all requests of this connection, owned by it; by default over a client of its own to handle
+    // separate cookies, content compression is left to the exchange so it can be measured
+    protected final HttpExchange exchange;
 
     // generates URLs based on the region and realm
     protected RegionalUrlsHandler urlHandler;
@@ -60,23 +73,121 @@ public class Connection {
     // so the new iteration would pick up a message to send
     protected volatile HttpPost hPost;
 
-    // new messages are stored here until the chat loop picks them up and sends them
-    protected ArrayBlockingQueue<SentMessage> messages = new ArrayBlockingQueue<>(10);
+    // sent messages are kept here until the chat loop posts them and the server acknowledges them
+    protected DeliveryTracker deliveries = new DeliveryTracker();
+
+    // the request in flight is a poll, which sending may abort without losing a message
+    private volatile boolean polling;
+
+    // channels to join again when a lost session is resumed
+    protected final Set<String> boundChats = ConcurrentHashMap.newKeySet();
+
+    // failures of the chat loop and the pause before the next attempt
+    protected final SessionHealth health = new SessionHealth();
+
+    private final AtomicLong undecoded = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    // rooms whose messages are decoded by the chat loop, null means all of them
+    private volatile Predicate<String> roomFilter;
+
+    // gets every message the chat loop decodes, on the polling thread
+    private volatile Consumer<ChatMessage> messageListener;
+
+    private final Region region;
 
     /**
      * @param email  the email used to log in to Uplay
      * @param password  the password of the Uplay account
      */
     public Connection(String email, String password, Region region) {
+        this(email, password, region, new ClientExchange(HttpClients.custom().disableContentCompression().build()));
+    }
+
+    /**
+     * @param exchange  executes the HTTP requests instead of the default client, e.g. to record or replay traffic;
+     * closed with the connection
+     */
+    public Connection(String email, String password, Region region, HttpExchange exchange) {
         this.session = new Session(email, password);
+        this.region = region;
+        this.exchange = exchange;
         urlHandler = RegionalUrlsHandler.getHandler(region);
     }
 
+    public Region getRegion() {
+        return region;
+    }
+
+    /**
+     * @return the realm the player was found on, null before {@link #receiveAuthHash()}
+     */
+    public String getRealm() {
+        return session.realm;
+    }
+
+    /**
+     * Lets the chat loop skip groupchat messages of some rooms before they are decoded.
+     * A response is skipped only if every message in it comes from a room rejected by the filter.
+     * @param roomFilter  returns true for rooms whose messages must be decoded, null decodes everything
+     */
+    public void setRoomFilter(Predicate<String> roomFilter) {
+        this.roomFilter = roomFilter;
+    }
+
+    /**
+     * @return the room filter, null if every room is decoded
+     */
+    public Predicate<String> getRoomFilter() {
+        return roomFilter;
+    }
+
+    /**
+     * Lets the chat loop hand every decoded message to the listener before returning it, e.g. to keep a history.
+     * The listener runs on the polling thread and must be quick.
+     * @param messageListener  null removes the listener
+     */
+    public void setMessageListener(Consumer<ChatMessage> messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    /**
+     * @return how many responses of the chat loop were skipped by the room filter
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
     //TODO implement the restart procedure, hopefully without repeated login (no need to store password then)
     public void restart() {
         bindAll();
     }
 
+    /**
+     * Captures the current session so it can be continued by {@link #importSession(SessionState)}, e.g. on
+     * another node. The chat loop of this connection must be stopped first, otherwise both connections would
+     * use the same request ids.
+     */
+    public SessionState exportSession() {
+        return new SessionState(session.email, session.name, session.realm, session.userId, session.authToken,
+                session.sid, session.rid.get(), boundChats);
+    }
+
+    /**
+     * Continues a session exported by another connection of the same account. No login is needed,
+     * {@link #chatLoop()} can be called right away.
+     */
+    public void importSession(SessionState state) {
+        session.name = state.getName();
+        session.realm = state.getRealm();
+        session.userId = state.getUserId();
+        session.authToken = state.getAuthToken();
+        session.sid = state.getSid();
+        session.rid.set(state.getRid());
+        boundChats.addAll(state.getBoundChats());
+    }
+
     /**
      * Retrieves the friend list from the chat server and their status: online or offline.
      * Nicknames are in lower case even if their ingame names use uppercase letters. This is because chat server stores
@@ -115,6 +226,7 @@ public class Connection {
      * @return up to 15 messages of history from the channel
      */
     public List<ChatMessage> bindChat(String chatName) {
+        boundChats.add(chatName);
         String path = urlHandler.getBindPathHttp(session.realm);
         String body = xmlHelper.prepareBindChatBody(session.sid, session.nextRid(), chatName, session.name);
         doPost(path, body);
@@ -125,49 +237,277 @@ public class Connection {
         return xmlHelper.extractHistory(history);
     }
 
+    /**
+     * Binds several chat channels at once. All join presences are sent in a single request, then the history
+     * is collected from the following responses until every channel has reported or the round limit is reached.
+     * A room has reported once a groupchat message of it came, which the subject after the history always is,
+     * or its join was rejected; the presences of its occupants come before the history and do not count.
+     * The responses are decoded in parallel.
+     * @param chatNames  the names of the chat channels, e.g. trade or gc_123
+     * @return up to 15 messages of history for each channel, keyed by the requested name; the history of rooms
+     * which were not requested is dropped
+     */
+    public Map<String, List<ChatMessage>> bindChats(Collection<String> chatNames) {
+        boundChats.addAll(chatNames);
+        String path = urlHandler.getBindPathHttp(session.realm);
+        String body = xmlHelper.prepareBindChatsBody(session.sid, session.nextRid(), chatNames, session.name);
+        List<String> responses = new ArrayList<>();
+        responses.add(doPost(path, body).body);
+
+        Set<String> pending = new HashSet<>(chatNames);
+        pending.removeAll(xmlHelper.extractReportedRooms(responses.get(0)));
+        // the server may spread the history of many rooms over several responses
+        for (int round = 0; round < chatNames.size() && !pending.isEmpty(); round++) {
+            body = xmlHelper.prepareDummyBody(session.sid, session.nextRid());
+            String response = doPost(path, body).body;
+            responses.add(response);
+            pending.removeAll(xmlHelper.extractReportedRooms(response));
+        }
+        return xmlHelper.extractHistories(chatNames, responses);
+    }
+
+    /**
+     * Binds several public chat channels at once, see {@link #bindChats(Collection)}.
+     * Guild channels need the guild number, so they have to be bound with {@link #bindChats(Collection)}.
+     * @param channels  public channels to bind
+     * @return up to 15 messages of history for each channel
+     */
+    public Map<String, List<ChatMessage>> bindChannels(Collection<Channel> channels) {
+        List<String> chatNames = new ArrayList<>();
+        for (Channel channel : channels) {
+            if (channel == Channel.GUILD || channel == Channel.GUILD_OFFICERS) {
+                throw new IllegalArgumentException(channel + " needs a guild number, use bindChats instead");
+            }
+            chatNames.add(channel.toString());
+        }
+        return bindChats(chatNames);
+    }
+
     /**
      * Waits in a loop until a non-empty message from chat arrives.
      * @return a message from chat. This can be text message or a status change of a friend.
+     * Null if the calling thread was interrupted.
      */
     public ChatMessage chatLoop() {
-        String path = urlHandler.getBindPathHttp(session.realm);
         while (true) {
-            String response = "";
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            String path = urlHandler.getBindPathHttp(session.realm);
+            String response;
+            PendingSend send = null;
             try {
+                if (health.getState() == SessionHealth.State.RESUMING) {
+                    resume();
+                }
                 String body;
-                if (!messages.isEmpty()) {
-                    SentMessage message = messages.take();
-                    body = xmlHelper.prepareMessageBody(message, session);
+                send = deliveries.next();
+                if (send != null) {
+                    deliveries.posted(send);
+                    if (send.body == null) {
+                        send.body = xmlHelper.prepareMessageBody(send, session);
+                    }
+                    body = send.body;
                 } else {
                     body = xmlHelper.prepareChatBody(session.sid, session.nextRid());
                 }
-                response = helper(path, body);
-                if ("<body xmlns=\"http://jabber.org/protocol/httpbind\"></body>".equals(response)) {
-                    continue;
+                polling = send == null;
+                try {
+                    response = helper(path, body);
+                } finally {
+                    polling = false;
                 }
-                if (response.contains("<presence")) {
-                    int from = response.indexOf("from=");
-                    String further = response.substring(from + 6);
-                    String name = further.substring(0, further.indexOf("@"));
-                    System.out.println(name + " is online or offline");
-                    continue;
+                health.success();
+            } catch (RuntimeException e) {
+                if (send != null) {
+                    deliveries.attemptFailed(send, e);
                 }
-                return xmlHelper.extractMessage(response);
-            } catch (Exception e) {
-                // not all responses are handled now, ignoring some of them helps to test other things
-                // print response body is ok here
-                e.printStackTrace();
+                // a failed resume leaves the session lost, so the next attempt resumes again
+                BoshCondition condition = e instanceof BoshException
+                        ? ((BoshException) e).getCondition() : BoshCondition.TERMINATE;
+                long backoff = health.failure(condition);
+                if (send != null && health.getState() == SessionHealth.State.RESUMING) {
+                    // the rid belongs to the lost session, the new one gets the message in a new request
+                    send.body = null;
+                }
+                if (!backOff(backoff)) {
+                    return null;
+                }
+                continue;
+            }
+            if (response == null) {
+                // a poll aborted by sendMessage, the next iteration sends the message;
+                // a message whose request was aborted is posted again with the same rid
+                if (send != null) {
+                    deliveries.attemptFailed(send, null);
+                }
+                continue;
             }
+            if (send != null) {
+                // answered, a repost would be a new request
+                send.body = null;
+            }
+            if (send != null && !send.isEchoed()) {
+                deliveries.acknowledge(send.id);
+            }
+            if (response.contains("id=\"m_")) {
+                // the echo of a groupchat message may come with the response to the send or to a later poll
+                deliveries.acknowledgeEchoes(response);
+            }
+            if ("<body xmlns=\"http://jabber.org/protocol/httpbind\"></body>".equals(response)) {
+                continue;
+            }
+            if (response.contains("<presence")) {
+                int from = response.indexOf("from=");
+                String further = response.substring(from + 6);
+                String name = further.substring(0, further.indexOf("@"));
+                System.out.println(name + " is online or offline");
+                continue;
+            }
+            if (isFiltered(response)) {
+                skipped.incrementAndGet();
+                continue;
+            }
+            ChatMessage message;
+            try {
+                message = xmlHelper.extractMessage(response);
+            } catch (RuntimeException e) {
+                // not all stanzas are handled now, they are not connection failures though
+                undecoded.incrementAndGet();
+                continue;
+            }
+            Consumer<ChatMessage> listener = messageListener;
+            if (listener != null && message != null) {
+                listener.accept(message);
+            }
+            return message;
         }
     }
 
     /**
-     * Sends a message to chat.
+     * Checks with a plain text scan, much cheaper than decoding, whether the room filter rejects the response.
+     */
+    private boolean isFiltered(String response) {
+        Predicate<String> filter = roomFilter;
+        if (filter == null) {
+            return false;
+        }
+        int messageCount = 0;
+        for (int i = response.indexOf("<message"); i >= 0; i = response.indexOf("<message", i + 1)) {
+            messageCount++;
+        }
+        int rejected = 0;
+        Matcher m = ROOM_PATTERN.matcher(response);
+        while (m.find()) {
+            if (filter.test(m.group(1))) {
+                return false;
+            }
+            rejected++;
+        }
+        // a private message or anything else without a room must still be decoded
+        return rejected > 0 && rejected == messageCount;
+    }
+
+    /**
+     * @return failure state and error rate of this session
+     */
+    public SessionHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * @return compression ratio and CPU cost of the HTTP traffic of this session,
+     * null if the connection was given an exchange other than a {@link ClientExchange}
+     */
+    public CompressionStats getCompressionStats() {
+        return exchange instanceof ClientExchange ? ((ClientExchange) exchange).getCompressionStats() : null;
+    }
+
+    /**
+     * @return how many responses of the chat loop could not be turned into a message
+     */
+    public long getUndecoded() {
+        return undecoded.get();
+    }
+
+    /**
+     * Binds a new session after the server has dropped the old one and joins the channels bound before.
+     */
+    private void resume() {
+        restart();
+        if (!boundChats.isEmpty()) {
+            bindChats(new ArrayList<>(boundChats));
+        }
+        health.resumed();
+    }
+
+    /**
+     * Sleeps for the backoff period.
+     * @return false if the thread was interrupted while sleeping
+     */
+    private boolean backOff(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Sends a message to chat without waiting for the result, see {@link #send(SentMessage)}.
      * @param message  message to be sent to chat.
+     * @throws IllegalStateException if too many messages are waiting for the chat loop
      */
     public void sendMessage(SentMessage message) {
-        messages.add(message);
-        hPost.abort();
+        send(message);
+    }
+
+    /**
+     * Queues a message for the chat loop and interrupts its poll, so the next iteration posts the message.
+     * A request which fails is posted again with its rid, so the server does not process it twice,
+     * see {@link DeliveryTracker}.
+     * @param message  message to be sent to chat.
+     * @return completed once the server acknowledged the message, with a {@link DeliveryException} if it never did
+     * @throws IllegalStateException if too many messages are waiting for the chat loop
+     */
+    public CompletableFuture<Delivery> send(SentMessage message) {
+        CompletableFuture<Delivery> delivery = deliveries.enqueue(message);
+        if (polling) {
+            abort();
+        }
+        return delivery;
+    }
+
+    /**
+     * @return counters and latency of the messages sent through this connection
+     */
+    public DeliveryTracker getDeliveryTracker() {
+        return deliveries;
+    }
+
+    /**
+     * Aborts the HTTP request which is currently in flight, if there is one.
+     * The blocked call either fails or, in case of the chat loop, starts a new iteration.
+     */
+    public void abort() {
+        HttpPost post = hPost;
+        if (post != null) {
+            post.abort();
+        }
+    }
+
+    /**
+     * Aborts the request in flight and closes the exchange, which releases its HTTP client with the pooled sockets.
+     * A long running process must close every connection it stops using, the chat loop cannot be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        abort();
+        hPost = null;
+        deliveries.failAll(new DeliveryException("connection closed"));
+        exchange.close();
     }
 
     public void login() throws BadCredentialsException, UplayDownException {
@@ -272,27 +612,50 @@ public class Connection {
     }
 
     //TODO get rid of this helper method
+    /**
+     * Posts a chat loop request.
+     * @return the response body or null if the request was aborted
+     * @throws BoshException if the request failed or the server reported an error
+     */
     private String helper(String path, String body) {
         HttpPost httpPost = new HttpPost(path);
         hPost = httpPost;
-        String result = "none";
+        if (polling && deliveries.hasQueued()) {
+            // a message was queued after the chat loop decided to poll, it must not wait for the poll to end
+            httpPost.abort();
+        }
+        httpPost.setEntity(new ByteArrayEntity(body.getBytes(StandardCharsets.UTF_8)));
         try {
-            httpPost.setEntity(new ByteArrayEntity(body.getBytes("UTF-8")));
-            CloseableHttpResponse response = httpclient.execute(httpPost);
-            result = EntityUtils.toString(response.getEntity(), "UTF-8");
-            response.close();
-        } catch (Exception e) {
+            HttpResult result = exchange.execute(httpPost);
+            checkResponse(result.getStatusCode(), result.getBody());
+            return result.getBody();
+        } catch (IOException e) {
+            if (httpPost.isAborted()) {
+                return null;
+            }
+            throw new BoshException(BoshCondition.NETWORK, e.getMessage(), e);
+        }
+    }
 
+    private void checkResponse(int code, String body) {
+        if (code == SC_NOT_FOUND) {
+            // legacy BOSH servers report item-not-found with HTTP 404
+            throw new BoshException(BoshCondition.ITEM_NOT_FOUND, "HTTP " + code);
+        }
+        if (code != SC_OK) {
+            throw new BoshException(BoshCondition.HTTP_ERROR, "HTTP " + code);
+        }
+        if (body.contains("terminate") && TERMINATE_PATTERN.matcher(body).find()) {
+            Matcher m = CONDITION_PATTERN.matcher(body);
+            String condition = m.find() ? m.group(1) : null;
+            throw new BoshException(BoshCondition.fromTerminate(condition), "session terminated: " + condition);
         }
-        return result;
     }
 
     private ResponseContent doGet(HttpGet httpGet) {
-        try (CloseableHttpResponse response = httpclient.execute(httpGet)) {
-            int code = response.getStatusLine().getStatusCode();
-            String body = EntityUtils.toString(response.getEntity(), "UTF-8");
-            Header[] cookies = response.getHeaders("Set-Cookie");
-            return new ResponseContent(code, body, cookies);
+        try {
+            HttpResult result = exchange.execute(httpGet);
+            return new ResponseContent(result.getStatusCode(), result.getBody(), result.getCookies());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -317,18 +680,25 @@ public class Connection {
 
     private ResponseContent doPost(HttpPost httpPost) {
         hPost = httpPost;
-        try (CloseableHttpResponse response = httpclient.execute(httpPost)) {
-            int code = response.getStatusLine().getStatusCode();
-            String body = EntityUtils.toString(response.getEntity(), "UTF-8");
-            Header[] cookies = response.getHeaders("Set-Cookie");
-            return new ResponseContent(code, body, cookies);
+        try {
+            HttpResult result = exchange.execute(httpPost);
+            return new ResponseContent(result.getStatusCode(), result.getBody(), result.getCookies());
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new BoshException(BoshCondition.NETWORK, e.getMessage(), e);
         }
     }
 
     protected class XMLHelper {
-        private final SAXReader xmlReader = new SAXReader();
+        // created on the first decode, so a connection which never decodes never loads the parser;
+        // navigation uses the element API instead of XPath for the same reason
+        private SAXReader xmlReader;
+
+        private SAXReader xmlReader() {
+            if (xmlReader == null) {
+                xmlReader = new SAXReader();
+            }
+            return xmlReader;
+        }
 
         private String extractSid(String body) {
             Pattern pattern = Pattern.compile("sid=\"(.*?)\"");
@@ -354,30 +724,60 @@ public class Connection {
             return String.format("<body sid=\"%s\" rid=\"%d\" xmlns=\"http://jabber.org/protocol/httpbind\" />", sid, rid);
         }
 
-        private String prepareMessageBody(SentMessage message, Session session) {
+        private String prepareMessageBody(PendingSend send, Session session) {
+            SentMessage message = send.message;
             String body;
             if (message.getChannel().equals("private")) {
                 body = "<body rid=\""+session.nextRid()+"\" xmlns=\"http://jabber.org/protocol/httpbind\" " +
                         "sid=\""+session.sid+"\"><message to=\""+message.getTo()+"@"+ urlHandler.getChatPath(session.realm)+"\" " +
-                        "id=\"m_100\" from=\""+session.name+"@"+ urlHandler.getChatPath(session.realm)+"\"><body>"+message.getText()+"</body>" +
+                        "id=\""+send.id+"\" from=\""+session.name+"@"+ urlHandler.getChatPath(session.realm)+"\"><body>"+escape(message.getText())+"</body>" +
                         "<bbmsg playerid=\""+session.userId+"\" playertag=\""+"null"+"\" playername=\""+session.name+"\" xmlns=\"bbmsg\" />" +
                         "</message></body>";
             } else {
                 body = "<body rid=\""+session.nextRid()+"\" xmlns=\"http://jabber.org/protocol/httpbind\" sid=\""+session.sid+"\">" +
-                        "<message to=\""+message.getChannel()+"@conference."+ urlHandler.getChatPath(session.realm)+"\" id=\"m_73\" " +
-                        "from=\""+session.name+"@"+ urlHandler.getChatPath(session.realm)+"\" type=\"groupchat\"><body>.</body>" +
+                        "<message to=\""+message.getChannel()+"@conference."+ urlHandler.getChatPath(session.realm)+"\" id=\""+send.id+"\" " +
+                        "from=\""+session.name+"@"+ urlHandler.getChatPath(session.realm)+"\" type=\"groupchat\"><body>"+escape(message.getText())+"</body>" +
                         "<bbmsg playerid=\""+session.userId+"\" playertag=\""+"null"+"\" playername=\""+session.name+"\" " +
                         "xmlns=\"bbmsg\" /></message></body>";
             }
             return body;
         }
 
+        private String escape(String text) {
+            if (text == null) {
+                return "";
+            }
+            StringBuilder escaped = new StringBuilder(text.length() + 16);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '&': escaped.append("&amp;"); break;
+                    case '<': escaped.append("&lt;"); break;
+                    case '>': escaped.append("&gt;"); break;
+                    case '"': escaped.append("&quot;"); break;
+                    default: escaped.append(c);
+                }
+            }
+            return escaped.toString();
+        }
+
         private String prepareBindChatBody(String sid, int rid, String chat, String name) {
             return String.format("<body sid=\"%s\" rid=\"%d\" xmlns=\"http://jabber.org/protocol/httpbind\">" +
                     "<presence to=\"%s@conference.%s/%s\">" +
                     "<priority>0</priority><x xmlns=\"http://jabber.org/protocol/muc\" /></presence></body>", sid, rid, chat, urlHandler.getBindPath(session.realm), name);
         }
 
+        private String prepareBindChatsBody(String sid, int rid, Collection<String> chats, String name) {
+            StringBuilder body = new StringBuilder(String.format("<body sid=\"%s\" rid=\"%d\" " +
+                    "xmlns=\"http://jabber.org/protocol/httpbind\">", sid, rid));
+            for (String chat : chats) {
+                body.append(String.format("<presence to=\"%s@conference.%s/%s\">" +
+                        "<priority>0</priority><x xmlns=\"http://jabber.org/protocol/muc\" /></presence>",
+                        chat, urlHandler.getBindPath(session.realm), name));
+            }
+            return body.append("</body>").toString();
+        }
+
         private String prepareDummyBody(String sid, int rid) {
             return String.format("<body sid=\"%s\" rid=\"%d\" " +
                     "xmlns=\"http://jabber.org/protocol/httpbind\"><presence>" +
@@ -393,29 +793,29 @@ public class Connection {
             String cleanBody = destroyNamespaces(body); // getting rid of namespaces simplifies XML routine
             Document document = null;
             try {
-                document = xmlReader.read(new StringReader(cleanBody));
+                document = xmlReader().read(new StringReader(cleanBody));
             } catch (Exception e) {
                 // we all love checked exceptions!
             }
             Element el = document.getRootElement();
-            Node node = el.selectSingleNode("message");
+            Element node = el.element("message");
             if (node==null) {
                 System.out.println(cleanBody);
             }
             return extractMessage(node);
         }
 
-        private ChatMessage extractMessage(Node node) {
-            Node messageNode = node.selectSingleNode("body");
+        private ChatMessage extractMessage(Element node) {
+            Element messageNode = node.element("body");
             if (messageNode == null) {
                 return null;
             }
             String text = messageNode.getText();
 
-            String type = node.valueOf("@type");
+            String type = node.attributeValue("type", "");
             String channelName;
             if ("groupchat".equals(type)) {
-                String channel = node.valueOf("@from");
+                String channel = node.attributeValue("from", "");
                 channelName = getChatName(channel);
             } else {
                 channelName = "private";
@@ -425,15 +825,15 @@ public class Connection {
                 channelName = "global-1";
             }
 
-            Node bbmsg = node.selectSingleNode("bbmsg");
-            String playerName = bbmsg.valueOf("@playername");
-            String guild = bbmsg.valueOf("@playertag");
-            String id = bbmsg.valueOf("@playerid");
+            Element bbmsg = node.element("bbmsg");
+            String playerName = bbmsg.attributeValue("playername", "");
+            String guild = bbmsg.attributeValue("playertag", "");
+            String id = bbmsg.attributeValue("playerid", "");
 
             LocalDateTime dateTime;
-            Node timeNode = node.selectSingleNode("delay");
+            Element timeNode = node.element("delay");
             if (timeNode!=null) {
-                String time = timeNode.valueOf("@stamp");
+                String time = timeNode.attributeValue("stamp", "");
                 dateTime = getMessageTime(time);
             } else {
                 dateTime = LocalDateTime.now();
@@ -446,13 +846,13 @@ public class Connection {
             String cleanBody = destroyNamespaces(body); // getting rid of namespaces simplifies XML routine
             Document document = null;
             try {
-                document = xmlReader.read(new StringReader(cleanBody));
+                document = xmlReader().read(new StringReader(cleanBody));
             } catch (Exception e) {
                 // we all love checked exceptions!
             }
             Element el = document.getRootElement();
-            List<Node> nodes = el.selectNodes("message");
-            for (Node node : nodes) {
+            List<Element> nodes = el.elements("message");
+            for (Element node : nodes) {
                 ChatMessage chatMessage = extractMessage(node);
                 if (chatMessage==null) {
                     continue;
@@ -462,6 +862,75 @@ public class Connection {
             return messages;
         }
 
+        /**
+         * @return the groupchat messages of the body by the room they come from, e.g. global-2 for a message
+         * whose channel is global-1
+         */
+        private Map<String, List<ChatMessage>> extractRoomHistories(String body) {
+            Map<String, List<ChatMessage>> histories = new HashMap<>();
+            String cleanBody = destroyNamespaces(body); // getting rid of namespaces simplifies XML routine
+            Document document = null;
+            try {
+                document = xmlReader().read(new StringReader(cleanBody));
+            } catch (Exception e) {
+                // we all love checked exceptions!
+            }
+            List<Element> nodes = document.getRootElement().elements("message");
+            for (Element node : nodes) {
+                String from = node.attributeValue("from", "");
+                if (!"groupchat".equals(node.attributeValue("type", "")) || from.indexOf('@') < 0) {
+                    continue;
+                }
+                ChatMessage chatMessage = extractMessage(node);
+                if (chatMessage == null) {
+                    continue;
+                }
+                histories.computeIfAbsent(from.substring(0, from.indexOf('@')), k -> new ArrayList<>()).add(chatMessage);
+            }
+            return histories;
+        }
+
+        private Map<String, List<ChatMessage>> extractHistories(Collection<String> chatNames, List<String> responses) {
+            // SAXReader is not thread safe, so every response gets its own helper
+            List<CompletableFuture<Map<String, List<ChatMessage>>>> decoded = new ArrayList<>();
+            for (String response : responses) {
+                if (!response.contains("<message")) {
+                    continue;
+                }
+                decoded.add(CompletableFuture.supplyAsync(() -> new XMLHelper().extractRoomHistories(response)));
+            }
+            Map<String, List<ChatMessage>> histories = new LinkedHashMap<>();
+            for (String chatName : chatNames) {
+                histories.put(chatName, new ArrayList<>());
+            }
+            for (CompletableFuture<Map<String, List<ChatMessage>>> future : decoded) {
+                for (Map.Entry<String, List<ChatMessage>> room : future.join().entrySet()) {
+                    List<ChatMessage> history = histories.get(room.getKey());
+                    if (history != null) {
+                        history.addAll(room.getValue());
+                    }
+                }
+            }
+            return histories;
+        }
+
+        /**
+         * @return rooms which sent a groupchat message or rejected the join with an error presence
+         */
+        private Set<String> extractReportedRooms(String body) {
+            Set<String> rooms = new HashSet<>();
+            Matcher stanza = STANZA_PATTERN.matcher(body);
+            while (stanza.find()) {
+                String tag = stanza.group();
+                String type = "message".equals(stanza.group(1)) ? "groupchat" : "error";
+                Matcher room = ROOM_PATTERN.matcher(tag);
+                if (room.find() && (tag.contains("type=\"" + type + "\"") || tag.contains("type='" + type + "'"))) {
+                    rooms.add(room.group(1));
+                }
+            }
+            return rooms;
+        }
+
         private LocalDateTime getMessageTime(String time) {
             try {
                 TimeZone tz = TimeZone.getDefault();
@@ -481,16 +950,16 @@ public class Connection {
                 String cleanResponse = destroyNamespaces(response);
                 Document document = null;
                 try {
-                    document = xmlReader.read(new StringReader(cleanResponse));
+                    document = xmlReader().read(new StringReader(cleanResponse));
                 } catch (Exception e) {
                     // we all love checked exceptions!
                 }
-                Node iq = document.getRootElement().selectSingleNode("iq");
-                Node query = iq.selectSingleNode("query");
-                List<Node> nodes = query.selectNodes("item");
+                Element iq = document.getRootElement().element("iq");
+                Element query = iq.element("query");
+                List<Element> nodes = query.elements("item");
 
-                for (Node node : nodes) {
-                    String name = node.valueOf("@jid");
+                for (Element node : nodes) {
+                    String name = node.attributeValue("jid", "");
                     name = name.split("@")[0];
                     friends.add(name);
                 }
@@ -507,15 +976,15 @@ public class Connection {
             String cleanResponse = destroyNamespaces(response);
             Document document = null;
             try {
-                document = xmlReader.read(new StringReader(cleanResponse));
+                document = xmlReader().read(new StringReader(cleanResponse));
             } catch (Exception e) {
                 // we all love checked exceptions!
             }
-            Node body = document.getRootElement();
-            List<Node> statuses = body.selectNodes("presence");
+            Element body = document.getRootElement();
+            List<Element> statuses = body.elements("presence");
 
-            for (Node node : statuses) {
-                String name = node.valueOf("@from");
+            for (Element node : statuses) {
+                String name = node.attributeValue("from", "");
                 name = name.split("@")[0];
                 onlineFriends.add(name);
             }
@@ -537,6 +1006,10 @@ public class Connection {
             else if (fromString.startsWith("trade")) {
                 chatName="trade";
             }
+            else if (fromString.contains("@")) {
+                // guild chats and other rooms are named exactly like the room
+                chatName=fromString.substring(0, fromString.indexOf("@"));
+            }
             return chatName;
         }
     }
@@ -0,0 +1,42 @@
+package tso.chat;
+
+/**
+ * Outcome of a message acknowledged by the chat server, see {@link Connection#send(SentMessage)}.
+ */
+public class Delivery {
+    private final String stanzaId;
+    private final int attempts;
+    private final long latencyMillis;
+
+    public Delivery(String stanzaId, int attempts, long latencyMillis) {
+        this.stanzaId = stanzaId;
+        this.attempts = attempts;
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @return the id of the message stanza, the same for every attempt
+     */
+    public String getStanzaId() {
+        return stanzaId;
+    }
+
+    /**
+     * @return how many times the message was posted, 1 unless it was retried
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return milliseconds from {@link Connection#send(SentMessage)} to the acknowledgement
+     */
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return stanzaId + " delivered in " + latencyMillis + " ms, " + attempts + " attempt(s)";
+    }
+}
@@ -0,0 +1,310 @@
+package tso.chat;
+
+import tso.chat.exceptions.DeliveryException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the messages sent through a {@link Connection} until the chat server acknowledges them.
+ * <p>
+ * Every message gets a stanza id unique to the tracker, e.g. {@code m_k3x9z1_42}, which all its attempts share.
+ * A groupchat message is acknowledged when the room echoes it back with that id, a private message when its request
+ * succeeds, as the server does not echo those.
+ * <p>
+ * A request which failed or was aborted is posted again as is, rid included, up to the maximum attempts. A BOSH
+ * connection manager answers a repeated rid from its cache, so a request which reached the server before it failed
+ * is not processed twice. Only when the session is lost in between is the message posted in a new request.
+ * <p>
+ * A groupchat message whose request was answered but whose echo does not come within the timeout fails with a
+ * {@link DeliveryException}. The chat server does not deduplicate stanzas by id, so posting it again would show it
+ * twice if only the echo was late or lost. Senders which prefer repeating a message to losing it turn reposting of
+ * such messages on; the first echo of any attempt then acknowledges the message, later ones are counted by
+ * {@link #getDuplicates()}, and an acknowledged message waiting for its next attempt is not posted again.
+ * <p>
+ * At most {@code capacity} new messages wait for the chat loop, retries go first and are not limited.
+ */
+public class DeliveryTracker {
+    public static final long DEFAULT_ACK_TIMEOUT_MILLIS = 5_000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final int DEFAULT_CAPACITY = 10;
+    // weight of the latest delivery in the average latency
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final long ackTimeoutNanos;
+    private final int maxAttempts;
+    private final int capacity;
+    private final boolean repostUnechoed;
+    private final String idPrefix;
+    private long nextId;
+
+    // every message not acknowledged or failed yet, by stanza id in the order they were sent
+    private final Map<String, PendingSend> pending = new LinkedHashMap<>();
+    // messages waiting for the chat loop, retries at the head
+    private final Deque<PendingSend> queue = new ArrayDeque<>();
+    private int queuedNew;
+
+    private long posted;
+    private long retries;
+    private long delivered;
+    private long failed;
+    private long duplicates;
+    private double latencyMillis;
+    private long maxLatencyMillis;
+
+    public DeliveryTracker() {
+        this(DEFAULT_ACK_TIMEOUT_MILLIS, DEFAULT_MAX_ATTEMPTS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Fails groupchat messages whose echo does not come in time, see {@link DeliveryTracker}.
+     * @param ackTimeoutMillis  how long a posted message waits for its acknowledgement
+     * @param maxAttempts  how many times a message is posted at most
+     * @param capacity  how many new messages may wait for the chat loop
+     */
+    public DeliveryTracker(long ackTimeoutMillis, int maxAttempts, int capacity) {
+        this(ackTimeoutMillis, maxAttempts, capacity, false);
+    }
+
+    /**
+     * @param ackTimeoutMillis  how long a posted message waits for its acknowledgement before the next attempt
+     * @param maxAttempts  how many times a message is posted at most
+     * @param capacity  how many new messages may wait for the chat loop
+     * @param repostUnechoed  posts a groupchat message again when its echo does not come in time, which may show it
+     * twice in the room
+     */
+    public DeliveryTracker(long ackTimeoutMillis, int maxAttempts, int capacity, boolean repostUnechoed) {
+        if (ackTimeoutMillis <= 0 || maxAttempts < 1 || capacity < 1) {
+            throw new IllegalArgumentException("timeout, attempts and capacity must be positive");
+        }
+        this.ackTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ackTimeoutMillis);
+        this.maxAttempts = maxAttempts;
+        this.capacity = capacity;
+        this.repostUnechoed = repostUnechoed;
+        this.idPrefix = "m_" + Integer.toString(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE), 36) + "_";
+    }
+
+    /**
+     * @return completed with the delivery once the message is acknowledged, exceptionally if it never is
+     * @throws IllegalStateException if {@code capacity} new messages are waiting already
+     */
+    synchronized CompletableFuture<Delivery> enqueue(SentMessage message) {
+        if (queuedNew >= capacity) {
+            throw new IllegalStateException("Queue full");
+        }
+        PendingSend send = new PendingSend(message, idPrefix + nextId++, System.nanoTime());
+        pending.put(send.id, send);
+        queue.addLast(send);
+        queuedNew++;
+        return send.future;
+    }
+
+    /**
+     * Fails the messages whose acknowledgement is overdue, or requeues them if reposting is on and attempts are left.
+     * @return the message the chat loop posts next, null if none is waiting
+     */
+    synchronized PendingSend next() {
+        long now = System.nanoTime();
+        PendingSend head = queue.peekFirst();
+        // a failed request is resent before anything else, the server expects its rid next
+        if (head == null || head.body == null) {
+            List<PendingSend> overdue = new ArrayList<>();
+            Iterator<PendingSend> it = pending.values().iterator();
+            while (it.hasNext()) {
+                PendingSend send = it.next();
+                if (send.queued || now - send.postedNanos < ackTimeoutNanos) {
+                    continue;
+                }
+                if (!repostUnechoed || send.attempts >= maxAttempts) {
+                    it.remove();
+                    fail(send, null);
+                } else {
+                    overdue.add(send);
+                }
+            }
+            // reposts go before new messages, in the order they were sent first
+            for (int i = overdue.size() - 1; i >= 0; i--) {
+                requeue(overdue.get(i));
+            }
+        }
+        PendingSend send = queue.pollFirst();
+        if (send != null) {
+            if (send.attempts == 0) {
+                queuedNew--;
+            }
+            send.queued = false;
+            // not overdue before posted() starts the timeout of the attempt
+            send.postedNanos = now;
+        }
+        return send;
+    }
+
+    synchronized boolean hasQueued() {
+        return !queue.isEmpty();
+    }
+
+    /**
+     * Starts the acknowledgement timeout of an attempt, called right before the message is posted.
+     */
+    synchronized void posted(PendingSend send) {
+        send.attempts++;
+        send.postedNanos = System.nanoTime();
+        posted++;
+        if (send.attempts > 1) {
+            retries++;
+        }
+    }
+
+    /**
+     * The request of an attempt failed or was aborted, its request is posted again at once if attempts are left.
+     */
+    synchronized void attemptFailed(PendingSend send, Throwable cause) {
+        if (pending.get(send.id) != send || send.queued) {
+            return;
+        }
+        if (send.attempts >= maxAttempts) {
+            pending.remove(send.id);
+            fail(send, cause);
+        } else {
+            requeue(send);
+        }
+    }
+
+    /**
+     * @return false if the id is not pending, e.g. an echo of an attempt after the message was acknowledged
+     */
+    synchronized boolean acknowledge(String id) {
+        PendingSend send = pending.remove(id);
+        if (send == null) {
+            if (id.startsWith(idPrefix)) {
+                duplicates++;
+            }
+            return false;
+        }
+        unqueue(send);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - send.enqueuedNanos);
+        delivered++;
+        latencyMillis = delivered == 1 ? millis : latencyMillis * (1 - LATENCY_WEIGHT) + millis * LATENCY_WEIGHT;
+        maxLatencyMillis = Math.max(maxLatencyMillis, millis);
+        send.future.complete(new Delivery(send.id, send.attempts, millis));
+        return true;
+    }
+
+    /**
+     * Acknowledges every message of this tracker whose id appears in a response, with a plain text scan.
+     * @return how many messages were acknowledged
+     */
+    int acknowledgeEchoes(String response) {
+        int acknowledged = 0;
+        for (int i = response.indexOf(idPrefix); i >= 0; i = response.indexOf(idPrefix, i + 1)) {
+            int end = i + idPrefix.length();
+            while (end < response.length() && Character.isDigit(response.charAt(end))) {
+                end++;
+            }
+            if (end > i + idPrefix.length() && acknowledge(response.substring(i, end))) {
+                acknowledged++;
+            }
+        }
+        return acknowledged;
+    }
+
+    /**
+     * Fails every pending message, e.g. when the connection is closed.
+     */
+    synchronized void failAll(Throwable cause) {
+        for (PendingSend send : pending.values()) {
+            fail(send, cause);
+        }
+        pending.clear();
+        queue.clear();
+        queuedNew = 0;
+    }
+
+    private void requeue(PendingSend send) {
+        send.queued = true;
+        queue.addFirst(send);
+    }
+
+    private void unqueue(PendingSend send) {
+        if (send.queued) {
+            queue.remove(send);
+            if (send.attempts == 0) {
+                queuedNew--;
+            }
+            send.queued = false;
+        }
+    }
+
+    private void fail(PendingSend send, Throwable cause) {
+        failed++;
+        unqueue(send);
+        send.future.completeExceptionally(new DeliveryException(
+                send.id + " not acknowledged after " + send.attempts + " attempt(s)", cause));
+    }
+
+    /**
+     * @return messages neither acknowledged nor failed yet
+     */
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * @return requests posted with a message, retries included
+     */
+    public synchronized long getPosted() {
+        return posted;
+    }
+
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return echoes of messages which were acknowledged already, each one a message the room shows more than once
+     */
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the share of finished messages which were delivered, 1 before any finished
+     */
+    public synchronized double getDeliveredRate() {
+        long finished = delivered + failed;
+        return finished == 0 ? 1 : (double) delivered / finished;
+    }
+
+    /**
+     * @return the moving average of milliseconds from sending to acknowledgement, recent deliveries weigh most
+     */
+    public synchronized double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public synchronized long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("delivered %d, failed %d (rate %.3f), pending %d, retries %d, duplicates %d, latency %.0f ms (max %d)",
+                delivered, failed, getDeliveredRate(), pending.size(), retries, duplicates, latencyMillis, maxLatencyMillis);
+    }
+}
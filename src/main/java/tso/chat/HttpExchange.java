@@ -0,0 +1,21 @@
+package tso.chat;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Executes the HTTP requests of a {@link Connection}.
+ * <p>
+ * The default implementation, {@link ClientExchange}, talks to the servers. Other implementations can record
+ * or replay the traffic, see {@link tso.chat.replay.RecordingExchange}.
+ */
+public interface HttpExchange extends Closeable {
+
+    /**
+     * @throws IOException if the request failed, including when it was aborted
+     */
+    HttpResult execute(HttpUriRequest request) throws IOException;
+
+}
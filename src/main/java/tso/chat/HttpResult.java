@@ -0,0 +1,33 @@
+package tso.chat;
+
+import org.apache.http.Header;
+
+/**
+ * Status, body and cookies of an HTTP response, read completely so the connection could be released.
+ */
+public class HttpResult {
+    private final int statusCode;
+    private final String body;
+    private final Header[] cookies;
+
+    public HttpResult(int statusCode, String body, Header[] cookies) {
+        this.statusCode = statusCode;
+        this.body = body;
+        this.cookies = cookies;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return the Set-Cookie headers of the response
+     */
+    public Header[] getCookies() {
+        return cookies;
+    }
+}
@@ -0,0 +1,34 @@
+package tso.chat;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A message of a {@link DeliveryTracker} between {@link Connection#send(SentMessage)} and its acknowledgement.
+ * The state is guarded by the tracker.
+ */
+class PendingSend {
+    final SentMessage message;
+    final String id;
+    final long enqueuedNanos;
+    final CompletableFuture<Delivery> future = new CompletableFuture<>();
+    int attempts;
+    long postedNanos;
+    // waiting in the queue of the tracker for the chat loop
+    boolean queued = true;
+    // the request posted last, with its rid, until the server answers it or the session is lost;
+    // only used by the chat loop, which resends it as is after a transport failure
+    String body;
+
+    PendingSend(SentMessage message, String id, long enqueuedNanos) {
+        this.message = message;
+        this.id = id;
+        this.enqueuedNanos = enqueuedNanos;
+    }
+
+    /**
+     * @return true for groupchat messages, which the room sends back to the sender with the same id
+     */
+    boolean isEchoed() {
+        return !"private".equals(message.getChannel());
+    }
+}
@@ -1,13 +1,6 @@
 package tso.chat;
 
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
-import org.dom4j.Node;
-import org.dom4j.io.SAXReader;
-
-import java.io.InputStream;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -21,15 +14,16 @@ class RegionalUrlsHandler {
     private final String language;
     private final String mainPage;
     private final Map<String, Map<String, String>> realms = new HashMap<>();
+    // URLs of every realm are built once, the chat loop asks for the bind URL on every request
+    private final Map<String, String> authPaths = new HashMap<>();
+    private final Map<String, String> bindPaths = new HashMap<>();
+    private final Map<String, String> chatPaths = new HashMap<>();
+    private final Map<String, String> bindPathsHttp = new HashMap<>();
+    private final String mainPageUrl;
+    private final String loginPath;
 
     static RegionalUrlsHandler getHandler(Region region) {
-        if (handlers.containsKey(region)) {
-            return handlers.get(region);
-        } else {
-            RegionalUrlsHandler handler = new RegionalUrlsHandler(region);
-            handlers.put(region, handler);
-            return handler;
-        }
+        return handlers.computeIfAbsent(region, RegionalUrlsHandler::new);
     }
 
     private RegionalUrlsHandler(Region region) {
@@ -38,30 +32,27 @@ class RegionalUrlsHandler {
         } else {
             site="thesettlersonline.";
         }
-        try {
-            ClassLoader classLoader = getClass().getClassLoader();
-            InputStream is = classLoader.getResourceAsStream("regions.xml");
-            SAXReader xmlReader = new SAXReader();
-            Document document = xmlReader.read(is);
-            List<Node> nodes = document.selectNodes("/regions/region[@name = '"+region.name()+"']");
-            Node regionNode = nodes.get(0);
-            domain = regionNode.selectSingleNode("domain").getText();
-            language = regionNode.selectSingleNode("language").getText();
-            mainPage = regionNode.selectSingleNode("main_page").getText();
-            Node realmsNode = regionNode.selectSingleNode("realms");
-            List<Node> realmsList = realmsNode.selectNodes("realm");
-            for (Node realm : realmsList) {
-                String no = realm.valueOf("@no");
-                String bb = realm.selectSingleNode("bb").getText();
-                String chat = realm.selectSingleNode("chat").getText();
-                Map<String, String> servers = new HashMap<>();
-                servers.put("bb", bb);
-                servers.put("chat", chat);
-                realms.put(no, servers);
-            }
-        } catch (DocumentException e) {
-            throw new RuntimeException(e);
+        // generated from regions.xml at build time, so no XML parser is loaded here
+        String[] table = RegionTable.lookup(region);
+        if (table == null) {
+            throw new IllegalArgumentException("regions.xml has no data for " + region);
+        }
+        domain = table[0];
+        language = table[1];
+        mainPage = table[2];
+        for (int i = 3; i < table.length; i += 3) {
+            Map<String, String> servers = new HashMap<>();
+            servers.put("bb", table[i + 1]);
+            servers.put("chat", table[i + 2]);
+            realms.put(table[i], servers);
+            String host = site + domain;
+            authPaths.put(table[i], "http://" + table[i + 1] + "." + host + "/authenticate");
+            bindPaths.put(table[i], table[i + 2] + "." + host + "/http-bind/");
+            chatPaths.put(table[i], table[i + 2] + "." + host);
+            bindPathsHttp.put(table[i], "http://" + bindPaths.get(table[i]));
         }
+        mainPageUrl = getSiteHttps() + "/" + language + "/" + mainPage;
+        loginPath = getSiteHttps() + "/" + language + "//api/user/login?name=%s&password=%s&rememberUser=on";
     }
 
     Set<String> getRealms() {
@@ -77,33 +68,27 @@ class RegionalUrlsHandler {
     }
 
     String getMainPage() {
-        return getSiteHttps()+"/"+language+"/"+mainPage;
+        return mainPageUrl;
     }
 
     String getLoginPath() {
-        return getSiteHttps()+"/"+language+"//api/user/login?name=%s&password=%s&rememberUser=on";
+        return loginPath;
     }
 
     String getAuthPath(String realmNo) {
-        Map<String, String> servers = realms.get(realmNo);
-        String bb = servers.get("bb");
-        return "http://"+bb+"."+ site +domain+"/authenticate";
+        return authPaths.get(realmNo);
     }
 
     String getBindPath(String realmNo) {
-        Map<String, String> servers = realms.get(realmNo);
-        String chat = servers.get("chat");
-        return chat+"."+ site +domain+"/http-bind/";
+        return bindPaths.get(realmNo);
     }
 
     String getChatPath(String realmNo) {
-        Map<String, String> servers = realms.get(realmNo);
-        String chat = servers.get("chat");
-        return chat+"."+ site +domain;
+        return chatPaths.get(realmNo);
     }
 
     String getBindPathHttp(String realmNo) {
-        return "http://"+getBindPath(realmNo);
+        return bindPathsHttp.get(realmNo);
     }
 
 }
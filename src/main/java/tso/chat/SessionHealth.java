@@ -0,0 +1,128 @@
+package tso.chat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Tracks failures of a chat session and decides how long to wait before the next attempt.
+ * <p>
+ * The session is {@link State#CONNECTED} while requests succeed. A transient failure moves it to
+ * {@link State#BACKING_OFF}, a lost session to {@link State#RESUMING}; either way the pause grows exponentially
+ * with every consecutive failure, up to a minute, and the first success resets it.
+ * <p>
+ * The error rate is an exponentially weighted average of failures per request, so it is cheap to read often.
+ * State listeners are called on the thread of the chat loop whenever the state changes.
+ */
+public class SessionHealth {
+    public enum State {
+        CONNECTED, BACKING_OFF, RESUMING
+    }
+
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    // weight of the latest request in the error rate, roughly the last 20 requests matter
+    private static final double RATE_WEIGHT = 0.05;
+
+    private volatile State state = State.CONNECTED;
+    private volatile BoshCondition lastCondition;
+    private volatile double errorRate;
+    private volatile long failures;
+    private volatile long resumes;
+    private int consecutiveFailures;
+    private final List<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+
+    void success() {
+        State previous;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            previous = state;
+            state = State.CONNECTED;
+            errorRate = errorRate * (1 - RATE_WEIGHT);
+        }
+        changed(previous, State.CONNECTED);
+    }
+
+    /**
+     * @return how long to wait before the next attempt, in milliseconds
+     */
+    long failure(BoshCondition condition) {
+        State previous;
+        State next;
+        long backoff;
+        synchronized (this) {
+            failures++;
+            lastCondition = condition;
+            errorRate = errorRate * (1 - RATE_WEIGHT) + RATE_WEIGHT;
+            previous = state;
+            // stays resuming until a new session is bound
+            next = condition.isSessionLost() || state == State.RESUMING ? State.RESUMING : State.BACKING_OFF;
+            state = next;
+            backoff = BASE_BACKOFF_MILLIS << Math.min(consecutiveFailures++, 16);
+        }
+        changed(previous, next);
+        backoff = Math.min(backoff, MAX_BACKOFF_MILLIS);
+        // jitter keeps hundreds of sessions of the same realm from retrying at the same moment
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    void resumed() {
+        State previous;
+        synchronized (this) {
+            resumes++;
+            previous = state;
+            state = State.CONNECTED;
+        }
+        changed(previous, State.CONNECTED);
+    }
+
+    /**
+     * @param listener  gets the new state whenever it changes
+     */
+    public void addStateListener(Consumer<State> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeStateListener(Consumer<State> listener) {
+        listeners.remove(listener);
+    }
+
+    private void changed(State previous, State next) {
+        if (previous == next) {
+            return;
+        }
+        for (Consumer<State> listener : listeners) {
+            listener.accept(next);
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return the condition of the latest failure, null if there was none
+     */
+    public BoshCondition getLastCondition() {
+        return lastCondition;
+    }
+
+    /**
+     * @return recent share of failed requests, from 0 to 1
+     */
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return how many times the session was bound again after it had been lost
+     */
+    public long getResumes() {
+        return resumes;
+    }
+}
@@ -0,0 +1,72 @@
+package tso.chat;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Snapshot of a bound chat session which lets another {@link Connection}, possibly in another process,
+ * continue the session without logging in again.
+ * <p>
+ * The password is deliberately not part of the state, so it can be handed over between processes.
+ */
+public class SessionState implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String email;
+    private final String name;
+    private final String realm;
+    private final String userId;
+    private final String authToken;
+    private final String sid;
+    private final int rid;
+    private final Set<String> boundChats;
+
+    public SessionState(String email, String name, String realm, String userId, String authToken, String sid, int rid,
+                        Set<String> boundChats) {
+        this.email = email;
+        this.name = name;
+        this.realm = realm;
+        this.userId = userId;
+        this.authToken = authToken;
+        this.sid = sid;
+        this.rid = rid;
+        this.boundChats = Collections.unmodifiableSet(new LinkedHashSet<>(boundChats));
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getAuthToken() {
+        return authToken;
+    }
+
+    public String getSid() {
+        return sid;
+    }
+
+    /**
+     * @return the request id the next request of the session must use
+     */
+    public int getRid() {
+        return rid;
+    }
+
+    public Set<String> getBoundChats() {
+        return boundChats;
+    }
+}
@@ -0,0 +1,14 @@
+package tso.chat;
+
+/**
+ * Gets notified when {@link Chat#connect(StageListener)} moves on to the next {@link Stage}.
+ * <p>
+ * It is called on the connecting thread. A JavaFX client can pass {@code stageProperty::set}
+ * and has to move the update to the application thread itself if the property is bound to the UI.
+ */
+@FunctionalInterface
+public interface StageListener {
+
+    void onStage(Stage stage);
+
+}
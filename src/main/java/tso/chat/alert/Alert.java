@@ -0,0 +1,55 @@
+package tso.chat.alert;
+
+import tso.chat.ChatMessage;
+
+/**
+ * A rule which fired on a message. Channel and sender are those of the {@link #getMessage() message}.
+ */
+public class Alert {
+    private final AlertRule rule;
+    private final ChatMessage message;
+    private final String matched;
+    private final int start;
+
+    Alert(AlertRule rule, ChatMessage message, String matched, int start) {
+        this.rule = rule;
+        this.message = message;
+        this.matched = matched;
+        this.start = start;
+    }
+
+    public AlertRule getRule() {
+        return rule;
+    }
+
+    public ChatMessage getMessage() {
+        return message;
+    }
+
+    public String getChannel() {
+        return message.getChannel();
+    }
+
+    public String getSenderName() {
+        return message.getSenderName();
+    }
+
+    /**
+     * @return the keyword or the regex match as written in the message
+     */
+    public String getMatched() {
+        return matched;
+    }
+
+    /**
+     * @return where the match starts in the field of the rule
+     */
+    public int getStart() {
+        return start;
+    }
+
+    @Override
+    public String toString() {
+        return rule + " in " + getChannel() + " from " + getSenderName() + ": " + matched;
+    }
+}
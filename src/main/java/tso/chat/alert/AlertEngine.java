@@ -0,0 +1,149 @@
+package tso.chat.alert;
+
+import tso.chat.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+
+/**
+ * Evaluates many {@link AlertRule}s against every message in a single pass over each field.
+ * <p>
+ * All keywords and regex prefilters of a field are compiled into one Aho-Corasick automaton, so the cost of a
+ * message grows with its length and the number of hits, not with the number of rules. Regular expressions run only
+ * when their prefilter was found. Each rule fires at most once per message, on its first match.
+ * <p>
+ * An engine is immutable and can be shared between threads; build a new one to change the rules.
+ */
+public class AlertEngine {
+    private final Map<AlertRule.Field, FieldMatcher> matchers = new EnumMap<>(AlertRule.Field.class);
+    private final int ruleCount;
+
+    public AlertEngine(Collection<AlertRule> rules) {
+        Map<AlertRule.Field, List<AlertRule>> byField = new EnumMap<>(AlertRule.Field.class);
+        for (AlertRule rule : rules) {
+            byField.computeIfAbsent(rule.getField(), f -> new ArrayList<>()).add(rule);
+        }
+        int offset = 0;
+        for (Map.Entry<AlertRule.Field, List<AlertRule>> field : byField.entrySet()) {
+            matchers.put(field.getKey(), new FieldMatcher(field.getValue(), offset));
+            offset += field.getValue().size();
+        }
+        ruleCount = offset;
+    }
+
+    /**
+     * Calls the listener for every rule which fires on the message.
+     */
+    public void evaluate(ChatMessage message, AlertListener listener) {
+        BitSet fired = new BitSet(ruleCount);
+        for (Map.Entry<AlertRule.Field, FieldMatcher> field : matchers.entrySet()) {
+            String value = field.getKey().of(message);
+            if (value != null && !value.isEmpty()) {
+                field.getValue().evaluate(message, value, fired, listener);
+            }
+        }
+    }
+
+    /**
+     * @return the alerts of the message in the order they fired
+     */
+    public List<Alert> evaluate(ChatMessage message) {
+        List<Alert> alerts = new ArrayList<>();
+        evaluate(message, alerts::add);
+        return alerts;
+    }
+
+    /**
+     * @return a consumer evaluating every message it gets, e.g. for a
+     * {@link tso.chat.stream.PriorityDispatcher} or a {@link tso.chat.stream.ConsumerSubscriber}
+     */
+    public Consumer<ChatMessage> consumer(AlertListener listener) {
+        return message -> evaluate(message, listener);
+    }
+
+    /**
+     * The rules of one field. Rule numbers start at the offset, so they are unique across the engine.
+     */
+    private static class FieldMatcher {
+        private final AlertRule[] rules;
+        private final int offset;
+        private final KeywordAutomaton automaton;
+        // for every automaton term: the rule and whether it is a keyword or a prefilter
+        private final int[] termRules;
+        private final boolean[] prefilters;
+        // regex rules without a prefilter
+        private final int[] ungated;
+
+        private FieldMatcher(List<AlertRule> rules, int offset) {
+            this.rules = rules.toArray(new AlertRule[0]);
+            this.offset = offset;
+            List<String> terms = new ArrayList<>();
+            List<Integer> owners = new ArrayList<>();
+            List<Boolean> kinds = new ArrayList<>();
+            List<Integer> always = new ArrayList<>();
+            for (int r = 0; r < this.rules.length; r++) {
+                AlertRule rule = this.rules[r];
+                for (String keyword : rule.getKeywords()) {
+                    terms.add(keyword);
+                    owners.add(r);
+                    kinds.add(false);
+                }
+                if (rule.getPattern() != null) {
+                    if (rule.getPrefilter() == null) {
+                        always.add(r);
+                    } else {
+                        terms.add(rule.getPrefilter());
+                        owners.add(r);
+                        kinds.add(true);
+                    }
+                }
+            }
+            automaton = new KeywordAutomaton(terms);
+            termRules = new int[terms.size()];
+            prefilters = new boolean[terms.size()];
+            for (int t = 0; t < termRules.length; t++) {
+                termRules[t] = owners.get(t);
+                prefilters[t] = kinds.get(t);
+            }
+            ungated = always.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private void evaluate(ChatMessage message, String value, BitSet fired, AlertListener listener) {
+            BitSet gated = new BitSet(rules.length);
+            automaton.scan(value, (term, start, end) -> {
+                int rule = termRules[term];
+                if (prefilters[term]) {
+                    gated.set(rule);
+                } else if (!fired.get(offset + rule) && isWord(value, start, end)) {
+                    fired.set(offset + rule);
+                    listener.onAlert(new Alert(rules[rule], message, value.substring(start, end), start));
+                }
+            });
+            for (int rule = gated.nextSetBit(0); rule >= 0; rule = gated.nextSetBit(rule + 1)) {
+                match(rule, message, value, fired, listener);
+            }
+            for (int rule : ungated) {
+                match(rule, message, value, fired, listener);
+            }
+        }
+
+        private void match(int rule, ChatMessage message, String value, BitSet fired, AlertListener listener) {
+            Matcher m = rules[rule].getPattern().matcher(value);
+            if (m.find()) {
+                fired.set(offset + rule);
+                listener.onAlert(new Alert(rules[rule], message, m.group(), m.start()));
+            }
+        }
+
+        private static boolean isWord(String value, int start, int end) {
+            return (start == 0 || !Character.isLetterOrDigit(value.charAt(start - 1)))
+                    && (end == value.length() || !Character.isLetterOrDigit(value.charAt(end)));
+        }
+    }
+}
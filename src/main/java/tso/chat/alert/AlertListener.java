@@ -0,0 +1,11 @@
+package tso.chat.alert;
+
+/**
+ * Called by {@link AlertEngine} for every rule which fires on a message, on the thread evaluating it.
+ */
+@FunctionalInterface
+public interface AlertListener {
+
+    void onAlert(Alert alert);
+
+}
@@ -0,0 +1,234 @@
+package tso.chat.alert;
+
+import tso.chat.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A watch rule of an {@link AlertEngine}: either a set of keywords or a regular expression, applied to one field
+ * of a message.
+ * <p>
+ * Keywords match whole words ignoring case, so "ore" does not fire on "more". A regular expression is only run
+ * on messages which contain its prefilter literal; without one it runs on every message, so regex rules should
+ * stay few.
+ */
+public class AlertRule {
+
+    public enum Field {
+        TEXT, SENDER_NAME;
+
+        String of(ChatMessage message) {
+            return this == TEXT ? message.getText() : message.getSenderName();
+        }
+    }
+
+    // shorter literals hit too many messages to be worth gating on
+    private static final int MIN_PREFILTER_LENGTH = 3;
+    // escaped letters which stand for a class, a boundary or a control character and end right there;
+    // others like \x41, \u00e9, \0101, \cA, \k<name> or \1 are not understood and give no prefilter
+    private static final String SIMPLE_ESCAPES = "dDsSwWbBAzZGhHvVRXtnrfae";
+    // an inline flag group which may turn on comments mode, e.g. (?x) or (?ix:...)
+    private static final Pattern INLINE_COMMENTS = Pattern.compile("\\(\\?[a-zA-Z]*x");
+
+    private final String id;
+    private final Field field;
+    private final List<String> keywords;
+    private final Pattern pattern;
+    private final String prefilter;
+
+    private AlertRule(String id, Field field, List<String> keywords, Pattern pattern, String prefilter) {
+        this.id = id;
+        this.field = field;
+        this.keywords = keywords;
+        this.pattern = pattern;
+        this.prefilter = prefilter;
+    }
+
+    /**
+     * @param keywords  fires when any of them occurs as a word
+     */
+    public static AlertRule keywords(String id, Field field, Collection<String> keywords) {
+        if (keywords.isEmpty()) {
+            throw new IllegalArgumentException("rule " + id + " has no keywords");
+        }
+        return new AlertRule(id, field, Collections.unmodifiableList(new ArrayList<>(keywords)), null, null);
+    }
+
+    /**
+     * Uses the longest literal every match of the pattern must contain as the prefilter, if there is one.
+     */
+    public static AlertRule regex(String id, Field field, Pattern pattern) {
+        return new AlertRule(id, field, Collections.emptyList(), pattern, requiredLiteral(pattern));
+    }
+
+    /**
+     * @param prefilter  text which every match of the pattern contains, compared ignoring case; null runs the
+     *                   pattern on every message
+     */
+    public static AlertRule regex(String id, Field field, Pattern pattern, String prefilter) {
+        if (prefilter != null && prefilter.isEmpty()) {
+            throw new IllegalArgumentException("empty prefilter of rule " + id);
+        }
+        return new AlertRule(id, field, Collections.emptyList(), pattern, prefilter);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * @return the regular expression or null for a keyword rule
+     */
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return the literal gating the regular expression or null
+     */
+    public String getPrefilter() {
+        return prefilter;
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+
+    /**
+     * Finds the longest run of literal characters outside of groups, alternatives and optional parts.
+     * Conservative: a pattern it does not understand gets no prefilter, neither does one in comments mode,
+     * where whitespace and comments are not literal.
+     * @return the literal or null
+     */
+    static String requiredLiteral(Pattern pattern) {
+        String regex = pattern.pattern();
+        if ((pattern.flags() & Pattern.LITERAL) != 0) {
+            return regex.length() >= MIN_PREFILTER_LENGTH ? regex : null;
+        }
+        if ((pattern.flags() & Pattern.COMMENTS) != 0 || INLINE_COMMENTS.matcher(regex).find()) {
+            return null;
+        }
+        if (regex.indexOf('|') >= 0 || regex.contains("\\Q")) {
+            return null;
+        }
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            Character literal = null;
+            switch (c) {
+                case '\\':
+                    char escaped = i + 1 < regex.length() ? regex.charAt(++i) : c;
+                    if (escaped == 'p' || escaped == 'P') {
+                        // a class like \p{L} or \pL
+                        if (i + 1 >= regex.length()) {
+                            return null;
+                        }
+                        i = regex.charAt(i + 1) == '{' ? regex.indexOf('}', i) : i + 1;
+                        if (i < 0) {
+                            return null;
+                        }
+                    } else if (Character.isLetterOrDigit(escaped)) {
+                        // a class like \d or a boundary, anything else may consume the characters after it
+                        if (SIMPLE_ESCAPES.indexOf(escaped) < 0) {
+                            return null;
+                        }
+                    } else {
+                        literal = escaped;
+                    }
+                    break;
+                case '[':
+                    i = endOfClass(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    break;
+                case '(':
+                    depth++;
+                    break;
+                case ')':
+                    depth--;
+                    break;
+                case '?':
+                case '*':
+                case '{':
+                    // the previous character may be missing
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+                    if (c == '{') {
+                        i = regex.indexOf('}', i);
+                        if (i < 0) {
+                            return null;
+                        }
+                    }
+                    break;
+                case '+':
+                    // the previous character is there, but may repeat before the next one
+                    best = longer(best, run);
+                    run.setLength(0);
+                    continue;
+                case '.':
+                case '^':
+                case '$':
+                    break;
+                default:
+                    literal = c;
+            }
+            if (literal != null && depth == 0) {
+                run.append(literal.charValue());
+            } else {
+                best = longer(best, run);
+                run.setLength(0);
+            }
+        }
+        best = longer(best, run);
+        return best.length() >= MIN_PREFILTER_LENGTH ? best : null;
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    /**
+     * Skips a character class with its nested classes and intersections, e.g. [a[bc]] or [a-z&&[^e]].
+     * A ] right after the opening [ or [^ is a literal, as in [^]].
+     * @return the index of the closing ], -1 if there is none
+     */
+    private static int endOfClass(String regex, int start) {
+        int depth = 0;
+        boolean opened = false;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '[') {
+                depth++;
+                opened = true;
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '\\') {
+                i++;
+            } else if (c == ']' && !opened && --depth == 0) {
+                return i;
+            }
+            opened = false;
+        }
+        return -1;
+    }
+}
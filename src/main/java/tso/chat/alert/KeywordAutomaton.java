@@ -0,0 +1,138 @@
+package tso.chat.alert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton finding all occurrences of many terms in one pass over a text, ignoring case.
+ * <p>
+ * Transitions of a state are kept as sorted parallel arrays and searched binarily, which stays compact for the
+ * large alphabet of chat (latin, cyrillic, digits and symbols). The automaton is immutable once built.
+ */
+class KeywordAutomaton {
+
+    interface MatchHandler {
+        /**
+         * @param term  index of the term in the list given to the constructor
+         * @param start  index of the first character of the occurrence
+         * @param end  index after the last character of the occurrence
+         */
+        void match(int term, int start, int end);
+    }
+
+    private static final int[] NONE = new int[0];
+
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] failure;
+    // terms ending in a state, including those reached through failure links
+    private final int[][] outputs;
+    private final int[] lengths;
+
+    KeywordAutomaton(List<String> terms) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        ends.add(new ArrayList<>());
+        lengths = new int[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            if (term.isEmpty()) {
+                throw new IllegalArgumentException("empty term");
+            }
+            lengths[t] = term.length();
+            int state = 0;
+            for (int i = 0; i < term.length(); i++) {
+                char c = Character.toLowerCase(term.charAt(i));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    ends.add(new ArrayList<>());
+                    trie.get(state).put(c, next);
+                }
+                state = next;
+            }
+            ends.get(state).add(t);
+        }
+
+        int states = trie.size();
+        keys = new char[states][];
+        targets = new int[states][];
+        for (int s = 0; s < states; s++) {
+            Map<Character, Integer> edges = trie.get(s);
+            keys[s] = new char[edges.size()];
+            targets[s] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                keys[s][i] = edge.getKey();
+                targets[s][i++] = edge.getValue();
+            }
+        }
+
+        // breadth first, so the failure state of a state is always complete before the state itself
+        failure = new int[states];
+        outputs = new int[states][];
+        outputs[0] = NONE;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            outputs[child] = toArray(ends.get(child));
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < keys[state].length; i++) {
+                char c = keys[state][i];
+                int child = targets[state][i];
+                int f = failure[state];
+                int next;
+                while ((next = step(f, c)) < 0 && f != 0) {
+                    f = failure[f];
+                }
+                failure[child] = next < 0 || next == child ? 0 : next;
+                int[] own = toArray(ends.get(child));
+                int[] inherited = outputs[failure[child]];
+                int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+                System.arraycopy(inherited, 0, merged, own.length, inherited.length);
+                outputs[child] = merged;
+                queue.add(child);
+            }
+        }
+    }
+
+    void scan(CharSequence text, MatchHandler handler) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) {
+                state = failure[state];
+            }
+            state = next < 0 ? 0 : next;
+            for (int term : outputs[state]) {
+                handler.match(term, i + 1 - lengths[term], i + 1);
+            }
+        }
+    }
+
+    private int step(int state, char c) {
+        int i = Arrays.binarySearch(keys[state], c);
+        return i < 0 ? -1 : targets[state][i];
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        if (values.isEmpty()) {
+            return NONE;
+        }
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,68 @@
+package tso.chat.cluster;
+
+import tso.chat.SessionState;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process transport: all nodes live in the same JVM and events are delivered on the calling thread.
+ * Meant for tests and for running several nodes in one process.
+ */
+public class LoopbackTransport implements ShardTransport {
+    private final Map<String, ShardListener> nodes = new LinkedHashMap<>();
+    private final List<Consumer<ShardedMessage>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void join(String node, ShardListener listener) {
+        synchronized (nodes) {
+            nodes.put(node, listener);
+        }
+        notifyMembers();
+    }
+
+    @Override
+    public void leave(String node) {
+        synchronized (nodes) {
+            nodes.remove(node);
+        }
+        notifyMembers();
+    }
+
+    @Override
+    public void handOff(String toNode, String email, SessionState state) {
+        ShardListener listener;
+        synchronized (nodes) {
+            listener = nodes.get(toNode);
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("unknown node " + toNode);
+        }
+        listener.onHandOff(email, state);
+    }
+
+    @Override
+    public void publish(ShardedMessage message) {
+        for (Consumer<ShardedMessage> subscriber : subscribers) {
+            subscriber.accept(message);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ShardedMessage> consumer) {
+        subscribers.add(consumer);
+    }
+
+    private void notifyMembers() {
+        Set<String> members;
+        List<ShardListener> listeners;
+        synchronized (nodes) {
+            members = Collections.unmodifiableSet(new LinkedHashSet<>(nodes.keySet()));
+            listeners = new ArrayList<>(nodes.values());
+        }
+        for (ShardListener listener : listeners) {
+            listener.onMembershipChanged(members);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package tso.chat.cluster;
+
+import tso.chat.Region;
+
+/**
+ * A game account whose chat session is hosted by one of the nodes of the cluster.
+ * The email identifies the account on the ring, so every node must be configured with the same accounts.
+ */
+public class ShardAccount {
+    private final String email;
+    private final String password;
+    private final Region region;
+
+    public ShardAccount(String email, String password, Region region) {
+        this.email = email;
+        this.password = password;
+        this.region = region;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public Region getRegion() {
+        return region;
+    }
+}
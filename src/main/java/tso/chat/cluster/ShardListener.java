@@ -0,0 +1,23 @@
+package tso.chat.cluster;
+
+import tso.chat.SessionState;
+
+import java.util.Set;
+
+/**
+ * Receives cluster events from a {@link ShardTransport}.
+ */
+public interface ShardListener {
+
+    /**
+     * @param members  ids of all nodes currently in the cluster, including the receiving one
+     */
+    void onMembershipChanged(Set<String> members);
+
+    /**
+     * A session of the account was handed over to the receiving node.
+     * @param email  the account the session belongs to
+     */
+    void onHandOff(String email, SessionState state);
+
+}
@@ -0,0 +1,269 @@
+package tso.chat.cluster;
+
+import tso.chat.ChatImpl;
+import tso.chat.Connection;
+import tso.chat.SessionState;
+import tso.chat.stream.ChatMessagePublisher;
+import tso.chat.stream.ConsumerSubscriber;
+import tso.chat.stream.MessageBuffers;
+import tso.chat.stream.OverflowStrategy;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * One node of a cluster sharing a pool of accounts.
+ * <p>
+ * Every node is configured with the same accounts and hosts the sessions of those which the consistent hash ring
+ * assigns to it. When the membership changes, a node hands the sessions it no longer owns over to their new owners
+ * together with the session state, so the new owner continues without logging in again. A session is started from
+ * scratch only when its previous owner is gone without handing it off. Messages of all local sessions are
+ * published to the merged stream of the transport.
+ * <p>
+ * The executor runs the login of new sessions and the chat loop of every local session, which blocks for as long
+ * as the session is hosted here, so it must not be a small fixed pool.
+ * <p>
+ * Sessions are stopped and handed off outside the monitor of the node: stopping waits for the chat loop, and
+ * a transport may deliver the hand-off to the other node on the calling thread.
+ */
+public class ShardNode implements ShardListener, AutoCloseable {
+    private static final int VIRTUAL_NODES = 128;
+    private static final int BUFFER_SIZE = 1000;
+    // a chat loop still running after this is not exported, its owner-to-be starts from scratch
+    private static final long STOP_TIMEOUT_SECONDS = 10;
+
+    private final String id;
+    private final Map<String, ShardAccount> accounts = new LinkedHashMap<>();
+    private final Collection<String> chatNames;
+    private final ShardTransport transport;
+    private final Executor executor;
+    private final Function<ShardAccount, Connection> connections;
+    private final Map<String, LocalSession> sessions = new ConcurrentHashMap<>();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+    private Set<String> members = Collections.emptySet();
+    private boolean closed;
+
+    /**
+     * @param chatNames  channels bound by sessions started from scratch
+     */
+    public ShardNode(String id, Collection<ShardAccount> accounts, Collection<String> chatNames,
+                     ShardTransport transport, Executor executor) {
+        this(id, accounts, chatNames, transport, executor,
+                account -> new Connection(account.getEmail(), account.getPassword(), account.getRegion()));
+    }
+
+    public ShardNode(String id, Collection<ShardAccount> accounts, Collection<String> chatNames,
+                     ShardTransport transport, Executor executor, Function<ShardAccount, Connection> connections) {
+        this.id = id;
+        for (ShardAccount account : accounts) {
+            this.accounts.put(account.getEmail(), account);
+        }
+        this.chatNames = new ArrayList<>(chatNames);
+        this.transport = transport;
+        this.executor = executor;
+        this.connections = connections;
+    }
+
+    public void start() {
+        transport.join(id, this);
+    }
+
+    @Override
+    public void onMembershipChanged(Set<String> members) {
+        List<Runnable> handOffs = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            planMembershipChange(members, handOffs);
+        }
+        handOffs.forEach(Runnable::run);
+    }
+
+    private void planMembershipChange(Set<String> members, List<Runnable> handOffs) {
+        // on the first event the others already host their accounts, as if this node had not joined yet
+        Set<String> previousMembers = new HashSet<>(this.members.isEmpty() ? members : this.members);
+        if (this.members.isEmpty()) {
+            previousMembers.remove(id);
+        }
+        ConsistentHashRing previous = new ConsistentHashRing(previousMembers, VIRTUAL_NODES);
+        ConsistentHashRing current = new ConsistentHashRing(members, VIRTUAL_NODES);
+        this.members = new HashSet<>(members);
+
+        for (ShardAccount account : accounts.values()) {
+            String email = account.getEmail();
+            String owner = current.nodeFor(email);
+            if (!id.equals(owner)) {
+                if (sessions.containsKey(email)) {
+                    handOffs.add(handOff(email, owner));
+                }
+                continue;
+            }
+            String previousOwner = previous.nodeFor(email);
+            boolean orphaned = previousOwner == null || !members.contains(previousOwner) || failed.contains(email);
+            if (!sessions.containsKey(email) && orphaned) {
+                startSession(account, null);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onHandOff(String email, SessionState state) {
+        ShardAccount account = accounts.get(email);
+        if (closed || account == null || sessions.containsKey(email)) {
+            return;
+        }
+        startSession(account, state);
+    }
+
+    /**
+     * Hands all local sessions over to the nodes which own them without this one and leaves the cluster.
+     */
+    @Override
+    public void close() {
+        List<Runnable> handOffs = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            Set<String> remaining = new HashSet<>(members);
+            remaining.remove(id);
+            ConsistentHashRing ring = new ConsistentHashRing(remaining, VIRTUAL_NODES);
+            for (String email : new ArrayList<>(sessions.keySet())) {
+                String owner = ring.nodeFor(email);
+                if (owner != null) {
+                    handOffs.add(handOff(email, owner));
+                } else {
+                    LocalSession session = sessions.remove(email);
+                    handOffs.add(session::stop);
+                }
+            }
+        }
+        handOffs.forEach(Runnable::run);
+        transport.leave(id);
+    }
+
+    /**
+     * @return accounts whose sessions are hosted by this node
+     */
+    public Set<String> getLocalAccounts() {
+        return Collections.unmodifiableSet(sessions.keySet());
+    }
+
+    /**
+     * @return accounts this node failed to log in, they are retried on the next membership change
+     */
+    public Set<String> getFailedAccounts() {
+        return Collections.unmodifiableSet(failed);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    private void startSession(ShardAccount account, SessionState state) {
+        LocalSession session = new LocalSession(account, connections.apply(account));
+        sessions.put(account.getEmail(), session);
+        failed.remove(account.getEmail());
+        executor.execute(() -> session.run(state));
+    }
+
+    /**
+     * Removes the session under the monitor of the node.
+     * @return stops the session and hands it over, to be run outside the monitor
+     */
+    private Runnable handOff(String email, String owner) {
+        LocalSession session = sessions.remove(email);
+        // a session which is still logging in has nothing worth handing over, the new owner starts from scratch
+        return () -> {
+            SessionState state = session.stop();
+            try {
+                transport.handOff(owner, email, state);
+            } catch (RuntimeException e) {
+                // the owner left meanwhile, whoever owns the account next starts it from scratch
+            }
+        };
+    }
+
+    private class LocalSession {
+        private final ShardAccount account;
+        private final Connection connection;
+        private ChatMessagePublisher publisher;
+        private boolean stopped;
+
+        private LocalSession(ShardAccount account, Connection connection) {
+            this.account = account;
+            this.connection = connection;
+        }
+
+        private void run(SessionState state) {
+            try {
+                if (state == null) {
+                    new ChatImpl(connection).connect();
+                    if (!chatNames.isEmpty()) {
+                        connection.bindChats(chatNames);
+                    }
+                } else {
+                    connection.importSession(state);
+                }
+            } catch (Exception e) {
+                closeConnection();
+                synchronized (this) {
+                    if (stopped) {
+                        // handed off meanwhile, not a failure of this node
+                        return;
+                    }
+                }
+                sessions.remove(account.getEmail(), this);
+                failed.add(account.getEmail());
+                return;
+            }
+            synchronized (this) {
+                if (stopped) {
+                    // stopped while logging in, stop() has left the connection to this thread
+                    closeConnection();
+                    return;
+                }
+                publisher = new ChatMessagePublisher(connection, executor,
+                        MessageBuffers.of(OverflowStrategy.DROP_OLDEST, BUFFER_SIZE));
+            }
+            publisher.subscribe(new ConsumerSubscriber<>(
+                    message -> transport.publish(new ShardedMessage(id, account.getEmail(), message))));
+        }
+
+        /**
+         * Waits for the chat loop to return before the session is exported, so the new owner is the only one
+         * using its request ids, then closes the connection.
+         * @return the state of the session or null if it was not bound yet or its chat loop did not stop in time
+         */
+        private SessionState stop() {
+            ChatMessagePublisher running;
+            synchronized (this) {
+                stopped = true;
+                running = publisher;
+            }
+            if (running == null) {
+                return null;
+            }
+            running.close();
+            try {
+                return running.awaitStopped(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS) ? connection.exportSession() : null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                closeConnection();
+            }
+        }
+
+        private void closeConnection() {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // the session is over for this node either way
+            }
+        }
+    }
+}
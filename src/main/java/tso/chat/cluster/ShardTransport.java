@@ -0,0 +1,41 @@
+package tso.chat.cluster;
+
+import tso.chat.SessionState;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries membership, session hand-offs and chat messages between the nodes of a cluster.
+ * <p>
+ * Implementations decide how nodes find each other and how the data travels (a message broker, HTTP, ...).
+ * {@link LoopbackTransport} connects nodes living in the same JVM.
+ */
+public interface ShardTransport {
+
+    /**
+     * Adds the node to the cluster. Every member, including the new one, is notified of the new membership.
+     */
+    void join(String node, ShardListener listener);
+
+    /**
+     * Removes the node from the cluster. The remaining members are notified of the new membership.
+     */
+    void leave(String node);
+
+    /**
+     * Passes a session to the node which owns it now; fails if that node is not a member.
+     * @param state  null if the session could not be exported, the new owner starts it from scratch
+     */
+    void handOff(String toNode, String email, SessionState state);
+
+    /**
+     * Sends a message received by a local session to the merged stream of the cluster.
+     */
+    void publish(ShardedMessage message);
+
+    /**
+     * Subscribes to the merged message stream of all nodes.
+     */
+    void subscribe(Consumer<ShardedMessage> consumer);
+
+}
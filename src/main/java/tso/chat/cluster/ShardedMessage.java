@@ -0,0 +1,30 @@
+package tso.chat.cluster;
+
+import tso.chat.ChatMessage;
+
+/**
+ * A chat message together with the account which received it and the node hosting that account.
+ */
+public class ShardedMessage {
+    private final String node;
+    private final String email;
+    private final ChatMessage message;
+
+    public ShardedMessage(String node, String email, ChatMessage message) {
+        this.node = node;
+        this.email = email;
+        this.message = message;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public ChatMessage getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,165 @@
+package tso.chat.codec;
+
+import tso.chat.ChatMessage;
+import tso.chat.Message;
+import tso.chat.StatusChangeMessage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static tso.chat.codec.WireFormat.*;
+
+/**
+ * Reads messages written by {@link MessageEncoder} from a channel.
+ * Like the encoder it keeps the dictionaries of the stream, so it is not thread safe.
+ */
+public class MessageDecoder implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final List<String>[] dictionaries;
+    private long previousMillis;
+    private boolean headerRead;
+
+    @SuppressWarnings("unchecked")
+    public MessageDecoder(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.dictionaries = new List[DICTIONARIES];
+        for (int i = 0; i < DICTIONARIES; i++) {
+            dictionaries[i] = new ArrayList<>();
+        }
+        buffer.flip();
+    }
+
+    /**
+     * @return the next message or null at the end of the stream
+     * @throws IOException if the stream is not in the expected format or ends in the middle of a record
+     */
+    public Message read() throws IOException {
+        if (!headerRead) {
+            readHeader();
+        }
+        if (!fill(1)) {
+            return null;
+        }
+        byte type = buffer.get();
+        switch (type) {
+            case CHAT_MESSAGE:
+                return readChatMessage();
+            case STATUS_CHANGE:
+                return new StatusChangeMessage();
+            default:
+                throw new IOException("unknown record type " + type);
+        }
+    }
+
+    /**
+     * The channel is not closed, it belongs to the caller.
+     */
+    @Override
+    public void close() {
+    }
+
+    private void readHeader() throws IOException {
+        require(MAGIC.length + 1);
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("not a chat message stream");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("unsupported stream version " + version);
+        }
+        headerRead = true;
+    }
+
+    private ChatMessage readChatMessage() throws IOException {
+        String channelName = readCoded(CHANNEL);
+        String guild = readCoded(GUILD);
+        String name = readCoded(SENDER_NAME);
+        String id = readCoded(SENDER_ID);
+        previousMillis += unzigzag(readVarint());
+        long length = readVarint();
+        String text = length == 0 ? null : readString((int) length - 1);
+        return new ChatMessage(channelName, guild, name, id, fromMillis(previousMillis), text);
+    }
+
+    private String readCoded(int field) throws IOException {
+        long code = readVarint();
+        if (code == NULL) {
+            return null;
+        }
+        List<String> dictionary = dictionaries[field];
+        if (code == LITERAL) {
+            String value = readString((int) readVarint());
+            if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+                dictionary.add(value);
+            }
+            return value;
+        }
+        long index = code - FIRST_INDEX;
+        if (index >= dictionary.size()) {
+            throw new IOException("unknown dictionary index " + index);
+        }
+        return dictionary.get((int) index);
+    }
+
+    private String readString(int length) throws IOException {
+        require(length);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            require(1);
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private void require(int bytes) throws IOException {
+        if (!fill(bytes)) {
+            throw new EOFException("stream ends in the middle of a record");
+        }
+    }
+
+    /**
+     * Reads from the channel until at least the given number of bytes is buffered.
+     * @return false if the stream ended first
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        if (buffer.capacity() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(bytes);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+}
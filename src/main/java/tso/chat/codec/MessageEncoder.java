@@ -0,0 +1,134 @@
+package tso.chat.codec;
+
+import tso.chat.ChatMessage;
+import tso.chat.Message;
+import tso.chat.StatusChangeMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static tso.chat.codec.WireFormat.*;
+
+/**
+ * Writes messages to a channel in the compact binary format described in {@link WireFormat}.
+ * <p>
+ * Records are collected in a buffer and written when it is full or on {@link #flush()}. Message times are stored
+ * with millisecond precision. An encoder keeps dictionaries of the strings it has written, so it belongs to one
+ * stream and is not thread safe.
+ */
+public class MessageEncoder implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Map<String, Integer>[] dictionaries;
+    private long previousMillis;
+
+    @SuppressWarnings("unchecked")
+    public MessageEncoder(WritableByteChannel channel) {
+        this.channel = channel;
+        this.dictionaries = new Map[DICTIONARIES];
+        for (int i = 0; i < DICTIONARIES; i++) {
+            dictionaries[i] = new HashMap<>();
+        }
+        buffer.put(MAGIC).put(VERSION);
+    }
+
+    public void write(Message message) throws IOException {
+        if (message instanceof ChatMessage) {
+            write((ChatMessage) message);
+        } else if (message instanceof StatusChangeMessage) {
+            ensure(1);
+            buffer.put(STATUS_CHANGE);
+        } else {
+            throw new IllegalArgumentException("unsupported message type " + message.getClass().getName());
+        }
+    }
+
+    private void write(ChatMessage message) throws IOException {
+        ensure(1);
+        buffer.put(CHAT_MESSAGE);
+        writeCoded(CHANNEL, message.getChannel());
+        writeCoded(GUILD, message.getSenderGuild());
+        writeCoded(SENDER_NAME, message.getSenderName());
+        writeCoded(SENDER_ID, message.getSenderId());
+        long millis = toMillis(message.getDateTime());
+        writeVarint(zigzag(millis - previousMillis));
+        previousMillis = millis;
+        String text = message.getText();
+        if (text == null) {
+            writeVarint(0);
+        } else {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            writeBytes(bytes);
+        }
+    }
+
+    /**
+     * Writes the buffered records to the channel.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes the buffered records, the channel is left open.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void writeCoded(int field, String value) throws IOException {
+        if (value == null) {
+            writeVarint(NULL);
+            return;
+        }
+        Map<String, Integer> dictionary = dictionaries[field];
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            writeVarint(index + FIRST_INDEX);
+            return;
+        }
+        if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+            dictionary.put(value, dictionary.size());
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(LITERAL);
+        writeVarint(bytes.length);
+        writeBytes(bytes);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        flush();
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(bytes);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package tso.chat.codec;
+
+import tso.chat.Message;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Batch export and import of message files in the binary format of {@link MessageEncoder}.
+ */
+public final class MessageFiles {
+
+    private MessageFiles() {
+    }
+
+    /**
+     * Writes the messages to the file, replacing its content.
+     * @return how many messages were written
+     */
+    public static long export(Path file, Iterable<? extends Message> messages) throws IOException {
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             MessageEncoder encoder = new MessageEncoder(channel)) {
+            for (Message message : messages) {
+                encoder.write(message);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Streams the messages of the file to the consumer without loading the whole file.
+     * @return how many messages were read
+     */
+    public static long replay(Path file, Consumer<? super Message> consumer) throws IOException {
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             MessageDecoder decoder = new MessageDecoder(channel)) {
+            Message message;
+            while ((message = decoder.read()) != null) {
+                consumer.accept(message);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static List<Message> readAll(Path file) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        replay(file, messages::add);
+        return messages;
+    }
+}
@@ -0,0 +1,60 @@
+package tso.chat.codec;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Constants and primitives shared by {@link MessageEncoder} and {@link MessageDecoder}.
+ * <p>
+ * A stream starts with the magic bytes {@code TSOC} and a version byte, followed by records. A record starts with
+ * its type byte. A chat message record holds, in this order:
+ * <ul>
+ *     <li>channel, sender guild, sender name and sender id, each dictionary coded: varint 0 is null,
+ *     1 is a new string (varint length and UTF-8 bytes) which gets the next index in the dictionary of its field,
+ *     n &gt;= 2 is the string with index n - 2</li>
+ *     <li>zigzag varint difference in milliseconds from the time of the previous chat message of the stream</li>
+ *     <li>the text as varint length and UTF-8 bytes, or varint 0 for null and length + 1 otherwise</li>
+ * </ul>
+ * A status change record has no body.
+ */
+final class WireFormat {
+    static final byte[] MAGIC = {'T', 'S', 'O', 'C'};
+    static final byte VERSION = 1;
+
+    static final byte CHAT_MESSAGE = 1;
+    static final byte STATUS_CHANGE = 2;
+
+    // fields of a chat message which are dictionary coded
+    static final int CHANNEL = 0;
+    static final int GUILD = 1;
+    static final int SENDER_NAME = 2;
+    static final int SENDER_ID = 3;
+    static final int DICTIONARIES = 4;
+
+    // keeps the dictionaries of a long stream from growing without limit, later strings are sent as literals
+    static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    static final int NULL = 0;
+    static final int LITERAL = 1;
+    static final int FIRST_INDEX = 2;
+
+    private WireFormat() {
+    }
+
+    static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000,
+                ZoneOffset.UTC);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
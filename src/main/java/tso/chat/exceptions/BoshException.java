@@ -0,0 +1,25 @@
+package tso.chat.exceptions;
+
+import tso.chat.BoshCondition;
+
+/**
+ * Thrown when a request to the chat server fails.
+ * Unlike the login exceptions it is unchecked, because it can come out of any step of the exchange.
+ */
+public class BoshException extends RuntimeException {
+    private final BoshCondition condition;
+
+    public BoshException(BoshCondition condition, String message) {
+        super(message);
+        this.condition = condition;
+    }
+
+    public BoshException(BoshCondition condition, String message, Throwable cause) {
+        super(message, cause);
+        this.condition = condition;
+    }
+
+    public BoshCondition getCondition() {
+        return condition;
+    }
+}
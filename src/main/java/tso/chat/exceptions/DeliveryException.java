@@ -0,0 +1,27 @@
+package tso.chat.exceptions;
+
+/**
+ * Thrown when a sent message was not acknowledged by the chat server after all attempts,
+ * or its connection was closed before.
+ */
+public class DeliveryException extends Exception {
+
+    public DeliveryException() {
+    }
+
+    public DeliveryException(String message) {
+        super(message);
+    }
+
+    public DeliveryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public DeliveryException(Throwable cause) {
+        super(cause);
+    }
+
+    public DeliveryException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
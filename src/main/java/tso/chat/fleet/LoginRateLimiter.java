@@ -0,0 +1,43 @@
+package tso.chat.fleet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Spaces logins evenly at a sustained rate, letting a burst through after a quiet period
+ * (generic cell rate algorithm: only the time the next login is due is stored).
+ * Reserved slots are never given back, a cancelled login still counts.
+ */
+class LoginRateLimiter {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+    private long dueNanos;
+
+    LoginRateLimiter(int perMinute, int burst) {
+        this(perMinute, burst, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock  time source, {@code System::nanoTime} outside of tests
+     */
+    LoginRateLimiter(int perMinute, int burst, LongSupplier nanoClock) {
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / perMinute;
+        this.burstNanos = intervalNanos * (burst - 1);
+        this.nanoClock = nanoClock;
+        this.dueNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes the next login slot.
+     * @return how long to wait before the login may start, in milliseconds
+     */
+    synchronized long reserve() {
+        long now = nanoClock.getAsLong();
+        long due = Math.max(dueNanos, now);
+        dueNanos = due + intervalNanos;
+        // up to a burst of logins may be due in the future and still start now
+        long wait = due - burstNanos - now;
+        return wait <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(wait) + 1;
+    }
+}
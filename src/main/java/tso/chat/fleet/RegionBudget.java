@@ -0,0 +1,43 @@
+package tso.chat.fleet;
+
+/**
+ * Resources a {@link RegionOrchestrator} gives to the sessions of one region.
+ */
+public class RegionBudget {
+    private final int threads;
+    private final int maxConnections;
+    private final int loginsPerMinute;
+    private final int loginBurst;
+
+    /**
+     * @param threads  threads running the calls of the region's sessions, also the most sessions polling at once
+     * @param maxConnections  pooled HTTP connections shared by the region's sessions
+     * @param loginsPerMinute  sustained login rate towards the region's servers
+     * @param loginBurst  how many logins may start at once after a quiet period, also the threads running them
+     */
+    public RegionBudget(int threads, int maxConnections, int loginsPerMinute, int loginBurst) {
+        if (threads <= 0 || maxConnections <= 0 || loginsPerMinute <= 0 || loginBurst <= 0) {
+            throw new IllegalArgumentException("budget values must be positive");
+        }
+        this.threads = threads;
+        this.maxConnections = maxConnections;
+        this.loginsPerMinute = loginsPerMinute;
+        this.loginBurst = loginBurst;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getLoginsPerMinute() {
+        return loginsPerMinute;
+    }
+
+    public int getLoginBurst() {
+        return loginBurst;
+    }
+}
@@ -0,0 +1,95 @@
+package tso.chat.fleet;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login outcomes of one region domain as seen by a {@link RegionOrchestrator}.
+ * <p>
+ * A region reported down by Uplay is {@link State#DOWN} for a cooldown which doubles with every consecutive report,
+ * from 30 seconds up to 10 minutes; logins queued meanwhile wait without holding a thread. Other login failures
+ * make it {@link State#DEGRADED} until the next successful login.
+ */
+public class RegionHealth {
+    public enum State {
+        UP, DEGRADED, DOWN
+    }
+
+    private static final long BASE_COOLDOWN_MILLIS = 30_000;
+    private static final long MAX_COOLDOWN_MILLIS = 600_000;
+    // weight of the latest login in the average latency
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private State state = State.UP;
+    private int consecutiveDown;
+    private long downUntilNanos;
+    private long logins;
+    private long failures;
+    private double loginMillis;
+    private Throwable lastError;
+
+    synchronized void success(long millis) {
+        logins++;
+        loginMillis = logins == 1 ? millis : loginMillis * (1 - LATENCY_WEIGHT) + millis * LATENCY_WEIGHT;
+        consecutiveDown = 0;
+        state = State.UP;
+    }
+
+    synchronized void down(Throwable error) {
+        failures++;
+        lastError = error;
+        long cooldown = Math.min(BASE_COOLDOWN_MILLIS << Math.min(consecutiveDown++, 10), MAX_COOLDOWN_MILLIS);
+        downUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(cooldown);
+        state = State.DOWN;
+    }
+
+    synchronized void failure(Throwable error) {
+        failures++;
+        lastError = error;
+        if (state != State.DOWN) {
+            state = State.DEGRADED;
+        }
+    }
+
+    /**
+     * @return how long new logins have to wait for the region to come back, 0 if it is not down
+     */
+    public synchronized long getRemainingDownMillis() {
+        if (state != State.DOWN) {
+            return 0;
+        }
+        long remaining = downUntilNanos - System.nanoTime();
+        if (remaining <= 0) {
+            // the next login finds out whether it is back
+            state = State.DEGRADED;
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(remaining) + 1;
+    }
+
+    public synchronized State getState() {
+        getRemainingDownMillis();
+        return state;
+    }
+
+    public synchronized long getLogins() {
+        return logins;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return moving average duration of a successful login, in milliseconds
+     */
+    public synchronized double getLoginMillis() {
+        return loginMillis;
+    }
+
+    /**
+     * @return the error of the last failed login or null
+     */
+    public synchronized Throwable getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,252 @@
+package tso.chat.fleet;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import tso.chat.AsyncChat;
+import tso.chat.AsyncChatImpl;
+import tso.chat.ChatImpl;
+import tso.chat.ClientExchange;
+import tso.chat.Connection;
+import tso.chat.HttpExchange;
+import tso.chat.Region;
+import tso.chat.exceptions.BadCredentialsException;
+import tso.chat.exceptions.UplayDownException;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs sessions of many regions side by side without letting one region slow down the others.
+ * <p>
+ * Every region gets its own group, created on first use: a fixed pool of threads for session calls, a separate
+ * pool for logins as large as the login burst, a pool of HTTP connections shared by the region's sessions (each
+ * session still has its own cookies), a login rate limit and a {@link RegionHealth}. A region reported down by Uplay
+ * holds back its own queued logins for a cooldown, while the threads and connections of the other regions stay free.
+ * <p>
+ * Sessions are handed out as {@link AsyncChat}s whose calls run on the executor of their region, already connected.
+ * A chat loop call holds its thread while it waits for messages, so a region runs at most as many polling sessions
+ * at once as its budget has threads; calls of further sessions wait, their logins do not.
+ */
+public class RegionOrchestrator implements AutoCloseable {
+
+    /**
+     * Creates the connection of a session, {@code Connection::new} by default.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create(String email, String password, Region region, HttpExchange exchange);
+    }
+
+    private static final RegionBudget DEFAULT_BUDGET = new RegionBudget(8, 64, 30, 5);
+
+    private final Map<Region, RegionBudget> budgets;
+    private final long timeoutMillis;
+    private final ConnectionFactory connections;
+    private final LongSupplier nanoClock;
+    private final Map<Region, RegionGroup> groups = new ConcurrentHashMap<>();
+    // only delays logins, which then run on the executor of their region
+    private final ScheduledExecutorService scheduler;
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * @param budgets  budgets of the regions which should not use the default one
+     * @param timeoutMillis  maximum duration of a session call, see {@link AsyncChatImpl}
+     */
+    public RegionOrchestrator(Map<Region, RegionBudget> budgets, long timeoutMillis) {
+        this(budgets, timeoutMillis, Connection::new);
+    }
+
+    public RegionOrchestrator(Map<Region, RegionBudget> budgets, long timeoutMillis, ConnectionFactory connections) {
+        this(budgets, timeoutMillis, connections, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock  time source of the login rate limits
+     */
+    RegionOrchestrator(Map<Region, RegionBudget> budgets, long timeoutMillis, ConnectionFactory connections,
+                       LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.budgets = new EnumMap<>(Region.class);
+        this.budgets.putAll(budgets);
+        this.timeoutMillis = timeoutMillis;
+        this.connections = connections;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemon("region-scheduler"));
+    }
+
+    /**
+     * Logs the account in on its region's login executor, once the region's login rate and health allow it.
+     * @return the connected session; fails with {@link UplayDownException}, {@link BadCredentialsException}
+     * or the runtime exception of the login
+     */
+    public CompletableFuture<AsyncChat> connect(String email, String password, Region region) {
+        CompletableFuture<AsyncChat> result = track(new CompletableFuture<>());
+        RegionGroup group = group(region);
+        scheduleLogin(group, () -> login(group, email, password, result), result, false);
+        return result;
+    }
+
+    /**
+     * Runs a task on the executor of the region, e.g. a chat loop of one of its sessions.
+     */
+    public <T> CompletableFuture<T> submit(Region region, Callable<T> task) {
+        CompletableFuture<T> result = track(new CompletableFuture<>());
+        group(region).executor.execute(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    public RegionHealth getHealth(Region region) {
+        return group(region).health;
+    }
+
+    /**
+     * @return HTTP connections of the region currently leased by requests in flight
+     */
+    public int getLeasedConnections(Region region) {
+        return group(region).pool.getTotalStats().getLeased();
+    }
+
+    /**
+     * Stops all region executors and closes their connection pools. Sessions handed out before must be closed
+     * by their owners; logins and tasks still waiting fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        for (RegionGroup group : groups.values()) {
+            group.loginExecutor.shutdownNow();
+            group.executor.shutdownNow();
+            group.pool.shutdown();
+        }
+        IllegalStateException error = new IllegalStateException("orchestrator closed");
+        for (CompletableFuture<?> future : pending) {
+            future.completeExceptionally(error);
+        }
+    }
+
+    private RegionGroup group(Region region) {
+        if (closed) {
+            throw new IllegalStateException("orchestrator closed");
+        }
+        return groups.computeIfAbsent(region, r -> new RegionGroup(r, budgets.getOrDefault(r, DEFAULT_BUDGET), nanoClock));
+    }
+
+    /**
+     * Waits out the region's cooldown and login rate without holding a thread, then runs the login.
+     */
+    private void scheduleLogin(RegionGroup group, Runnable login, CompletableFuture<?> result, boolean reserved) {
+        if (closed || result.isDone()) {
+            return;
+        }
+        long delay = group.health.getRemainingDownMillis();
+        if (delay == 0 && !reserved) {
+            reserved = true;
+            delay = group.limiter.reserve();
+        }
+        if (delay > 0) {
+            boolean slot = reserved;
+            scheduler.schedule(() -> scheduleLogin(group, login, result, slot), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        group.loginExecutor.execute(login);
+    }
+
+    private void login(RegionGroup group, String email, String password, CompletableFuture<AsyncChat> result) {
+        if (group.health.getRemainingDownMillis() > 0) {
+            // another login found the region down while this one was queued
+            scheduleLogin(group, () -> login(group, email, password, result), result, true);
+            return;
+        }
+        Connection connection = null;
+        long start = System.nanoTime();
+        try {
+            connection = connections.create(email, password, group.region, new ClientExchange(group.newClient()));
+            new ChatImpl(connection).connect();
+            group.health.success(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (closed || !result.complete(new AsyncChatImpl(connection, group.executor, timeoutMillis))) {
+                // the orchestrator was closed while logging in, nobody is going to close this session
+                fail(result, connection, new IllegalStateException("orchestrator closed"));
+            }
+        } catch (UplayDownException e) {
+            group.health.down(e);
+            fail(result, connection, e);
+        } catch (BadCredentialsException e) {
+            // the account's fault, not the region's
+            fail(result, connection, e);
+        } catch (RuntimeException e) {
+            group.health.failure(e);
+            fail(result, connection, e);
+        }
+    }
+
+    private static void fail(CompletableFuture<?> result, Connection connection, Exception error) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                error.addSuppressed(e);
+            }
+        }
+        result.completeExceptionally(error);
+    }
+
+    private <F extends CompletableFuture<?>> F track(F future) {
+        pending.add(future);
+        future.whenComplete((value, error) -> pending.remove(future));
+        return future;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class RegionGroup {
+        private final Region region;
+        private final ExecutorService executor;
+        // logins never wait for session calls, which may hold every thread of the executor
+        private final ExecutorService loginExecutor;
+        private final PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+        private final LoginRateLimiter limiter;
+        private final RegionHealth health = new RegionHealth();
+
+        private RegionGroup(Region region, RegionBudget budget, LongSupplier nanoClock) {
+            this.region = region;
+            String name = "region-" + region.name().toLowerCase(Locale.ROOT);
+            this.executor = Executors.newFixedThreadPool(budget.getThreads(), daemon(name));
+            this.loginExecutor = Executors.newFixedThreadPool(budget.getLoginBurst(), daemon(name + "-login"));
+            this.limiter = new LoginRateLimiter(budget.getLoginsPerMinute(), budget.getLoginBurst(), nanoClock);
+            pool.setMaxTotal(budget.getMaxConnections());
+            pool.setDefaultMaxPerRoute(budget.getMaxConnections());
+        }
+
+        /**
+         * @return a client with its own cookies over the region's connection pool
+         */
+        private CloseableHttpClient newClient() {
+            return HttpClients.custom()
+                    .setConnectionManager(pool)
+                    .setConnectionManagerShared(true)
+                    .disableContentCompression()
+                    .build();
+        }
+    }
+}
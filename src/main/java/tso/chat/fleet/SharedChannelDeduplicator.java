@@ -0,0 +1,174 @@
+package tso.chat.fleet;
+
+import tso.chat.Channel;
+import tso.chat.ChatMessage;
+import tso.chat.Connection;
+import tso.chat.SessionHealth;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Removes the copies of public channel messages received by many accounts of the same realm.
+ * <p>
+ * Every account sitting in global-1 or trade receives the same groupchat stanza. The deduplicator passes the first
+ * copy on and drops the copies arriving within the dedup window. Live messages carry the local arrival time, so
+ * copies are recognized by realm, channel, sender and text; a player repeating the exact same text within
+ * the window is reported once.
+ * <p>
+ * Optionally only a few designated connections per realm decode public channels at all: the others get a room
+ * filter which skips public messages before they are parsed, see {@link Connection#setRoomFilter}.
+ * Decoders are picked among the connected sessions first, and picked again whenever the {@link SessionHealth}
+ * state of a connection changes, so a failing decoder does not silence the public channels of the realm.
+ * Private and guild messages are always decoded by every connection.
+ */
+public class SharedChannelDeduplicator {
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final long windowNanos;
+    private final int decodersPerRealm;
+    private final Map<String, Long> seen = new ConcurrentHashMap<>();
+    private final Map<String, List<Connection>> realms = new HashMap<>();
+    private final Map<Connection, Consumer<SessionHealth.State>> healthListeners = new HashMap<>();
+    private final AtomicInteger sinceLastPurge = new AtomicInteger();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * @param windowMillis  how long after the first copy other copies are still recognized
+     * @param decodersPerRealm  how many connections per realm decode public channels, 0 lets all of them decode
+     */
+    public SharedChannelDeduplicator(long windowMillis, int decodersPerRealm) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.decodersPerRealm = decodersPerRealm;
+    }
+
+    /**
+     * Adds the connection to its realm group. It must have logged in already, so its realm is known.
+     * If the realm already has enough decoders, the connection stops decoding public channels.
+     */
+    public void attach(Connection connection) {
+        String realm = realmKey(connection);
+        Consumer<SessionHealth.State> listener = state -> {
+            synchronized (realms) {
+                if (realms.containsKey(realm)) {
+                    assignDecoders(realm);
+                }
+            }
+        };
+        synchronized (realms) {
+            realms.computeIfAbsent(realm, k -> new ArrayList<>()).add(connection);
+            healthListeners.put(connection, listener);
+            assignDecoders(realm);
+        }
+        connection.getHealth().addStateListener(listener);
+    }
+
+    /**
+     * Removes the connection from its realm group, another connection takes over decoding if needed.
+     */
+    public void detach(Connection connection) {
+        String realm = realmKey(connection);
+        synchronized (realms) {
+            List<Connection> connections = realms.get(realm);
+            if (connections != null && connections.remove(connection)) {
+                connection.getHealth().removeStateListener(healthListeners.remove(connection));
+                connection.setRoomFilter(null);
+                assignDecoders(realm);
+            }
+        }
+    }
+
+    /**
+     * Wraps the downstream consumer of a connection, so only the first copy of a public message reaches it.
+     */
+    public Consumer<ChatMessage> forConnection(Connection connection, Consumer<ChatMessage> downstream) {
+        return message -> {
+            if (isFirstCopy(realmKey(connection), message)) {
+                downstream.accept(message);
+            }
+        };
+    }
+
+    /**
+     * @param realm  identifies the realm, e.g. {@code EUROPE/3}
+     * @return false if the same public message was already seen in the realm within the window
+     */
+    public boolean isFirstCopy(String realm, ChatMessage message) {
+        String channel = message.getChannel();
+        if (channel == null || !Channel.isPublicRoom(channel)) {
+            return true;
+        }
+        long now = System.nanoTime();
+        String key = realm + '\u0000' + channel + '\u0000' + message.getSenderId() + '\u0000' + message.getText();
+        boolean[] first = {false};
+        seen.compute(key, (k, firstSeen) -> {
+            if (firstSeen == null || now - firstSeen > windowNanos) {
+                first[0] = true;
+                return now;
+            }
+            return firstSeen;
+        });
+        if (sinceLastPurge.incrementAndGet() >= PURGE_INTERVAL) {
+            sinceLastPurge.set(0);
+            purge(now);
+        }
+        if (!first[0]) {
+            duplicates.incrementAndGet();
+        }
+        return first[0];
+    }
+
+    /**
+     * @return how many copies were dropped
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    private void purge(long now) {
+        seen.values().removeIf(firstSeen -> now - firstSeen > windowNanos);
+    }
+
+    private void assignDecoders(String realm) {
+        List<Connection> connections = realms.get(realm);
+        // connected sessions first, the others only make up the number
+        List<Connection> candidates = new ArrayList<>(connections.size());
+        for (Connection connection : connections) {
+            if (connection.getHealth().getState() == SessionHealth.State.CONNECTED) {
+                candidates.add(connection);
+            }
+        }
+        for (Connection connection : connections) {
+            if (connection.getHealth().getState() != SessionHealth.State.CONNECTED) {
+                candidates.add(connection);
+            }
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            boolean decoder = decodersPerRealm <= 0 || i < decodersPerRealm;
+            candidates.get(i).setRoomFilter(decoder ? null : room -> !Channel.isPublicRoom(room));
+        }
+    }
+
+    /**
+     * @return the connections of the realm which decode public channels
+     */
+    List<Connection> getDecoders(String realm) {
+        List<Connection> decoders = new ArrayList<>();
+        synchronized (realms) {
+            for (Connection connection : realms.getOrDefault(realm, Collections.emptyList())) {
+                if (connection.getRoomFilter() == null) {
+                    decoders.add(connection);
+                }
+            }
+        }
+        return decoders;
+    }
+
+    private static String realmKey(Connection connection) {
+        return connection.getRegion() + "/" + connection.getRealm();
+    }
+}
@@ -0,0 +1,77 @@
+package tso.chat.history;
+
+import tso.chat.ChatMessage;
+import tso.chat.Connection;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the recent messages of every channel of every realm in a {@link MessageRing}, for clients and bots which
+ * join late.
+ * <p>
+ * Rings are created on the first message of a channel, all of the same size. Private messages belong to a single
+ * account and are not kept. Realms are keyed like {@code RUSSIA/3}, see {@link #attach(Connection)}.
+ */
+public class MessageHistory {
+    private static final String PRIVATE = "private";
+
+    private final int bytesPerRing;
+    private final Map<String, MessageRing> rings = new ConcurrentHashMap<>();
+
+    /**
+     * @param bytesPerRing  off-heap memory of each channel's ring
+     */
+    public MessageHistory(int bytesPerRing) {
+        this.bytesPerRing = bytesPerRing;
+    }
+
+    /**
+     * Makes the chat loop of the connection add every decoded message, on the polling thread.
+     * The connection must have logged in already, so its realm is known. If several connections of a realm
+     * are attached, which should be avoided, every copy of a public message is kept.
+     */
+    public void attach(Connection connection) {
+        String realm = connection.getRegion() + "/" + connection.getRealm();
+        connection.setMessageListener(message -> append(realm, message));
+    }
+
+    public void detach(Connection connection) {
+        connection.setMessageListener(null);
+    }
+
+    public void append(String realm, ChatMessage message) {
+        if (message.getChannel() == null || PRIVATE.equals(message.getChannel())) {
+            return;
+        }
+        rings.computeIfAbsent(key(realm, message.getChannel()), k -> new MessageRing(bytesPerRing)).append(message);
+    }
+
+    /**
+     * @return the ring of the channel or null if no message of it was seen yet
+     */
+    public MessageRing ring(String realm, String channel) {
+        return rings.get(key(realm, channel));
+    }
+
+    /**
+     * @return the newest messages of the channel, at most the given number, oldest first
+     */
+    public List<ChatMessage> recent(String realm, String channel, int count) {
+        MessageRing ring = ring(realm, channel);
+        return ring == null ? Collections.emptyList() : ring.recent(count);
+    }
+
+    /**
+     * @return off-heap memory taken by all rings
+     */
+    public long getBytes() {
+        return (long) rings.size() * bytesPerRing;
+    }
+
+    private static String key(String realm, String channel) {
+        return realm + "/" + channel;
+    }
+}
@@ -0,0 +1,251 @@
+package tso.chat.history;
+
+import tso.chat.ChatMessage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed-size ring of encoded messages in off-heap memory, the newest overwriting the oldest.
+ * <p>
+ * The messages are not objects on the heap, so a large history costs the garbage collector nothing.
+ * A record is {@code int length, long sequence, payload, int length}, padded to 8 bytes; the length at the end lets
+ * readers walk backwards from the newest record. A record which does not fit before the end of the buffer is
+ * preceded by a padding marker (negative size at both ends of the gap) and starts at the beginning again.
+ * <p>
+ * Positions are logical byte offsets which only grow. Appends are serialized and write under the write lock of
+ * a {@link StampedLock}: the writer moves {@code tail} past the records it is about to overwrite and publishes
+ * {@code head} after the new record is complete. Readers do not lock, they read a record under an optimistic stamp
+ * and validate it afterwards. Only when an append came in between do they check {@code tail} under the read lock,
+ * to find out whether the record was overwritten meanwhile.
+ */
+public class MessageRing {
+    private static final int ALIGNMENT = 8;
+    private static final int HEADER = 12;
+    private static final int TRAILER = 4;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    // held by the writer while it overwrites records, validated by the readers
+    private final StampedLock lock = new StampedLock();
+    // start of the oldest record and end of the newest one
+    private volatile long tail;
+    private volatile long head;
+    private long nextSequence = 1;
+    // encodes the message before its size is known, used by the writer only
+    private ByteBuffer scratch = ByteBuffer.allocate(512);
+
+    /**
+     * @param capacity  bytes of off-heap memory, rounded down to a multiple of 8
+     */
+    public MessageRing(int capacity) {
+        this.capacity = capacity & -ALIGNMENT;
+        if (this.capacity < 1024) {
+            throw new IllegalArgumentException("capacity too small: " + capacity);
+        }
+        this.buffer = ByteBuffer.allocateDirect(this.capacity);
+    }
+
+    /**
+     * Adds the message, overwriting the oldest ones if needed.
+     * @return the sequence number of the message
+     * @throws IllegalArgumentException if the encoded message takes more than a quarter of the ring
+     */
+    public synchronized long append(ChatMessage message) {
+        scratch.clear();
+        scratch = RecordFormat.encode(message, scratch);
+        int length = scratch.position();
+        int size = recordSize(length);
+        if (size > capacity / 4) {
+            throw new IllegalArgumentException("message of " + length + " bytes does not fit the ring");
+        }
+        long stamp = lock.writeLock();
+        try {
+            long start = head;
+            int offset = offset(start);
+            int gap = capacity - offset < size ? capacity - offset : 0;
+            long end = start + gap + size;
+            release(end - capacity);
+
+            if (gap > 0) {
+                buffer.putInt(offset, -gap);
+                buffer.putInt(capacity - TRAILER, -gap);
+                offset = 0;
+                start += gap;
+            }
+            long sequence = nextSequence++;
+            buffer.putInt(offset, length);
+            buffer.putLong(offset + 4, sequence);
+            ByteBuffer target = buffer.duplicate();
+            target.position(offset + HEADER);
+            scratch.flip();
+            target.put(scratch);
+            buffer.putInt(offset + size - TRAILER, length);
+            head = end;
+            return sequence;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return views of the newest records, at most the given number, oldest first
+     */
+    public List<MessageView> latest(int count) {
+        List<MessageView> views = new ArrayList<>(Math.min(count, 64));
+        long position = head;
+        while (views.size() < count && position > tail) {
+            int trailer = buffer.getInt(offset(position - TRAILER));
+            if (trailer < 0) {
+                position += trailer;
+                continue;
+            }
+            if (trailer > capacity) {
+                break;
+            }
+            long start = position - recordSize(trailer);
+            MessageView view = view(start);
+            if (view == null || buffer.getInt(offset(start)) != trailer) {
+                break;
+            }
+            views.add(view);
+            position = start;
+        }
+        Collections.reverse(views);
+        return views;
+    }
+
+    /**
+     * Lets a reader catch up, e.g. a client which saw the messages up to some sequence number before.
+     * @return views of the records after the given sequence number, at most the given number, oldest first
+     */
+    public List<MessageView> since(long sequence, int count) {
+        List<MessageView> views = new ArrayList<>(Math.min(count, 64));
+        long position = tail;
+        long end = head;
+        while (position < end && views.size() < count) {
+            int length = buffer.getInt(offset(position));
+            if (length < 0) {
+                position -= length;
+                continue;
+            }
+            MessageView view = length > capacity ? null : view(position);
+            if (view == null) {
+                // overwritten under our feet, go on with the oldest record left
+                long oldest = tail;
+                if (oldest <= position) {
+                    break;
+                }
+                position = oldest;
+                views.clear();
+                continue;
+            }
+            if (view.getSequence() > sequence) {
+                views.add(view);
+            }
+            position += recordSize(length);
+        }
+        return views;
+    }
+
+    /**
+     * @return the newest messages, at most the given number, oldest first
+     */
+    public List<ChatMessage> recent(int count) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (MessageView view : latest(count)) {
+            ChatMessage message = view.decode();
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @return sequence number of the newest message, 0 if there is none
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Called after a record was read.
+     * @param stamp  the optimistic stamp the record was read under
+     */
+    boolean isRetained(long position, long stamp) {
+        if (lock.validate(stamp)) {
+            return true;
+        }
+        // an append came in between, it may have overwritten the record
+        stamp = lock.readLock();
+        try {
+            return position >= tail;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the view of the record starting at the position, null if it is overwritten already
+     */
+    private MessageView view(long start) {
+        long stamp = lock.tryOptimisticRead();
+        MessageView view = read(start, stamp);
+        if (lock.validate(stamp)) {
+            return view;
+        }
+        // read again once the append is done, the view stays good until the next one
+        stamp = lock.readLock();
+        try {
+            return read(start, lock.tryOptimisticRead());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Reads the header of the record, which may be torn unless the stamp is still valid afterwards.
+     */
+    private MessageView read(long start, long stamp) {
+        if (start < tail) {
+            return null;
+        }
+        int offset = offset(start);
+        int length = buffer.getInt(offset);
+        long sequence = buffer.getLong(offset + 4);
+        if (length < 0 || length > capacity - offset - HEADER) {
+            return null;
+        }
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(offset + HEADER + length).position(offset + HEADER);
+        return new MessageView(this, start, sequence, stamp, payload.slice().asReadOnlyBuffer());
+    }
+
+    /**
+     * Moves the tail past every record which starts before the given position.
+     */
+    private void release(long position) {
+        long t = tail;
+        while (t < position) {
+            int length = buffer.getInt(offset(t));
+            t += length < 0 ? -length : recordSize(length);
+        }
+        tail = t;
+    }
+
+    private int offset(long position) {
+        return (int) (position % capacity);
+    }
+
+    private static int recordSize(int length) {
+        return (HEADER + length + TRAILER + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
@@ -0,0 +1,64 @@
+package tso.chat.history;
+
+import tso.chat.ChatMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A record of a {@link MessageRing}, read in place without copying.
+ * <p>
+ * The writer keeps going while a view is held, so a view is only good until its record is overwritten:
+ * check {@link #isValid()} after using the {@link #payload()}, {@link #decode()} does that by itself.
+ */
+public class MessageView {
+    private final MessageRing ring;
+    private final long position;
+    private final long sequence;
+    // of the ring's lock, valid as long as no append came after the record was read
+    private final long stamp;
+    private final ByteBuffer payload;
+
+    MessageView(MessageRing ring, long position, long sequence, long stamp, ByteBuffer payload) {
+        this.ring = ring;
+        this.position = position;
+        this.sequence = sequence;
+        this.stamp = stamp;
+        this.payload = payload;
+    }
+
+    /**
+     * @return number of the message in its ring, counting from 1
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return a read-only buffer over the encoded message in the ring's off-heap memory
+     */
+    public ByteBuffer payload() {
+        return payload.duplicate();
+    }
+
+    /**
+     * @return false once the writer has overwritten the record
+     */
+    public boolean isValid() {
+        return ring.isRetained(position, stamp);
+    }
+
+    /**
+     * Copies the record into a message.
+     * @return the message or null if the record was overwritten before or while it was read
+     */
+    public ChatMessage decode() {
+        ChatMessage message;
+        try {
+            message = RecordFormat.decode(payload.duplicate());
+        } catch (RuntimeException e) {
+            // torn by the writer, reported as overwritten below
+            message = null;
+        }
+        return isValid() ? message : null;
+    }
+}
@@ -0,0 +1,88 @@
+package tso.chat.history;
+
+import tso.chat.ChatMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Encoding of a single message in a {@link MessageRing}.
+ * <p>
+ * Unlike the stream format of {@link tso.chat.codec.MessageEncoder} every record stands on its own, so any record
+ * can be read without the ones before it, which were perhaps overwritten already. A record holds the time in
+ * milliseconds (UTC) and then channel, sender guild, sender name, sender id and text, each as int length and UTF-8
+ * bytes, length -1 for null.
+ */
+final class RecordFormat {
+
+    private RecordFormat() {
+    }
+
+    /**
+     * Writes the message at the position of the buffer.
+     * @return the buffer or, if it was too small, a larger copy of it
+     */
+    static ByteBuffer encode(ChatMessage message, ByteBuffer buffer) {
+        buffer = ensure(buffer, 8);
+        buffer.putLong(message.getDateTime().toInstant(ZoneOffset.UTC).toEpochMilli());
+        buffer = putString(buffer, message.getChannel());
+        buffer = putString(buffer, message.getSenderGuild());
+        buffer = putString(buffer, message.getSenderName());
+        buffer = putString(buffer, message.getSenderId());
+        return putString(buffer, message.getText());
+    }
+
+    /**
+     * Reads a message from the position of the buffer.
+     * @throws RuntimeException if the record is malformed, which happens when it was overwritten while being read
+     */
+    static ChatMessage decode(ByteBuffer buffer) {
+        long millis = buffer.getLong();
+        String channel = getString(buffer);
+        String guild = getString(buffer);
+        String name = getString(buffer);
+        String id = getString(buffer);
+        String text = getString(buffer);
+        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+        return new ChatMessage(channel, guild, name, id, dateTime, text);
+    }
+
+    private static ByteBuffer putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer = ensure(buffer, 4);
+            buffer.putInt(-1);
+            return buffer;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer = ensure(buffer, 4 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return buffer;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalStateException("malformed record");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
@@ -0,0 +1,86 @@
+package tso.chat.replay;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import tso.chat.HttpExchange;
+import tso.chat.HttpResult;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Passes requests to another {@link HttpExchange} and writes every request/response pair with its timing to a
+ * traffic file, which {@link ReplayExchange} can play back later.
+ * <p>
+ * Use one recording per connection, e.g.
+ * {@code new Connection(email, password, region, new RecordingExchange(new ClientExchange(client), file))}.
+ * The file is complete once the exchange is closed.
+ * <p>
+ * URIs are recorded without their query string: the login request carries the password there.
+ * Request and response bodies are recorded as they are, so the file must be treated as private.
+ */
+public class RecordingExchange implements HttpExchange {
+    private final HttpExchange delegate;
+    private final DataOutputStream out;
+    private final long startNanos = System.nanoTime();
+
+    public RecordingExchange(HttpExchange delegate, Path file) throws IOException {
+        this.delegate = delegate;
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))));
+        TrafficRecord.writeHeader(out);
+    }
+
+    @Override
+    public HttpResult execute(HttpUriRequest request) throws IOException {
+        byte[] requestBody = null;
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && entity.isRepeatable()) {
+                requestBody = EntityUtils.toByteArray(entity);
+            }
+        }
+        long start = System.nanoTime();
+        try {
+            HttpResult result = delegate.execute(request);
+            Header[] headers = result.getCookies();
+            String[] cookies = new String[headers.length];
+            for (int i = 0; i < headers.length; i++) {
+                cookies[i] = headers[i].getValue();
+            }
+            write(new TrafficRecord(start - startNanos, System.nanoTime() - start, request.getMethod(),
+                    withoutQuery(request), requestBody, result.getStatusCode(), result.getBody(), cookies, false));
+            return result;
+        } catch (IOException e) {
+            write(new TrafficRecord(start - startNanos, System.nanoTime() - start, request.getMethod(),
+                    withoutQuery(request), requestBody, TrafficRecord.FAILED, String.valueOf(e.getMessage()),
+                    new String[0], request.isAborted()));
+            throw e;
+        }
+    }
+
+    static String withoutQuery(HttpUriRequest request) {
+        String uri = request.getURI().toString();
+        int query = uri.indexOf('?');
+        return query < 0 ? uri : uri.substring(0, query);
+    }
+
+    private synchronized void write(TrafficRecord record) throws IOException {
+        record.write(out);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            delegate.close();
+        }
+    }
+}
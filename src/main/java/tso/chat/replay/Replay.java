@@ -0,0 +1,59 @@
+package tso.chat.replay;
+
+import tso.chat.ChatImpl;
+import tso.chat.ChatMessage;
+import tso.chat.Connection;
+import tso.chat.Region;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command line tool which drives a {@link Connection} from a traffic file and reports the decoding throughput.
+ * <p>
+ * Usage: {@code Replay <traffic file> <region> [--original-speed]}
+ * <p>
+ * It runs the whole headless path (connect, chat loop, decoding) without network, which also makes it the training
+ * run for a class data sharing archive, see README.
+ */
+public final class Replay {
+
+    private Replay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: Replay <traffic file> <region> [--original-speed]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        Region region = Region.valueOf(args[1]);
+        boolean originalSpeed = args.length > 2 && "--original-speed".equals(args[2]);
+
+        try (ReplayExchange exchange = new ReplayExchange(file, originalSpeed)) {
+            Connection connection = new Connection("replay", "replay", region, exchange);
+            long start = System.nanoTime();
+            String name = new ChatImpl(connection).connect();
+            AtomicLong messages = new AtomicLong();
+            // the chat loop never ends by itself, it is interrupted when the recording is exhausted
+            Thread loop = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    ChatMessage message = connection.chatLoop();
+                    if (message != null) {
+                        messages.incrementAndGet();
+                    }
+                }
+            }, "replay-chat-loop");
+            loop.start();
+            while (!exchange.isFinished()) {
+                Thread.sleep(10);
+            }
+            loop.interrupt();
+            loop.join();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%s: %d requests, %d messages in %d ms%n", name, exchange.getReplayed(), messages.get(),
+                    millis);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package tso.chat.replay;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHeader;
+import tso.chat.HttpExchange;
+import tso.chat.HttpResult;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Answers the requests of a {@link tso.chat.Connection} from a traffic file written by {@link RecordingExchange},
+ * without any network.
+ * <p>
+ * Requests must come in the recorded order; method and URI without query are checked, bodies are not because
+ * request ids are random. At original speed every response is returned when it was returned during the recording,
+ * otherwise as fast as the connection asks. Once the recording is exhausted every request fails, check {@link #isFinished()}
+ * to stop the driver.
+ */
+public class ReplayExchange implements HttpExchange {
+    private final DataInputStream in;
+    private final boolean originalSpeed;
+    private long startNanos;
+    private long replayed;
+    private volatile boolean finished;
+
+    public ReplayExchange(Path file, boolean originalSpeed) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))));
+        this.originalSpeed = originalSpeed;
+        TrafficRecord.readHeader(in);
+    }
+
+    @Override
+    public synchronized HttpResult execute(HttpUriRequest request) throws IOException {
+        TrafficRecord record = finished ? null : TrafficRecord.read(in);
+        if (record == null) {
+            finished = true;
+            throw new EOFException("end of recorded traffic");
+        }
+        if (replayed++ == 0) {
+            startNanos = System.nanoTime() - record.startNanos;
+        }
+        String uri = RecordingExchange.withoutQuery(request);
+        if (!record.method.equals(request.getMethod()) || !record.uri.equals(uri)) {
+            throw new IOException("replay diverged: recorded " + record.method + " " + record.uri
+                    + ", requested " + request.getMethod() + " " + uri);
+        }
+        if (originalSpeed) {
+            waitUntil(startNanos + record.startNanos + record.durationNanos);
+        }
+        if (record.status == TrafficRecord.FAILED) {
+            if (record.aborted) {
+                // the recorded loop iteration was interrupted by a send, the replayed one must look the same
+                request.abort();
+            }
+            throw new IOException(record.body);
+        }
+        Header[] cookies = new Header[record.cookies.length];
+        for (int i = 0; i < cookies.length; i++) {
+            cookies[i] = new BasicHeader("Set-Cookie", record.cookies[i]);
+        }
+        return new HttpResult(record.status, record.body, cookies);
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return how many requests have been answered so far
+     */
+    public synchronized long getReplayed() {
+        return replayed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void waitUntil(long deadline) throws IOException {
+        long delay = deadline - System.nanoTime();
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("replay interrupted", e);
+        }
+    }
+}
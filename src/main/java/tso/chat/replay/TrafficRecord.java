@@ -0,0 +1,117 @@
+package tso.chat.replay;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One request/response pair of a traffic file.
+ * <p>
+ * A traffic file is a gzipped stream starting with the magic bytes {@code TSOR} and a version byte, followed by
+ * records. Times are nanoseconds: when the request started, relative to the start of the recording, and how long
+ * it took. A failed request has status -1 and the error message instead of a response body.
+ */
+class TrafficRecord {
+    static final byte[] MAGIC = {'T', 'S', 'O', 'R'};
+    static final byte VERSION = 1;
+    static final int FAILED = -1;
+
+    final long startNanos;
+    final long durationNanos;
+    final String method;
+    final String uri;
+    final byte[] requestBody;
+    final int status;
+    final String body;
+    final String[] cookies;
+    final boolean aborted;
+
+    TrafficRecord(long startNanos, long durationNanos, String method, String uri, byte[] requestBody, int status,
+                  String body, String[] cookies, boolean aborted) {
+        this.startNanos = startNanos;
+        this.durationNanos = durationNanos;
+        this.method = method;
+        this.uri = uri;
+        this.requestBody = requestBody;
+        this.status = status;
+        this.body = body;
+        this.cookies = cookies;
+        this.aborted = aborted;
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    static void readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("not a traffic file");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported traffic file version " + version);
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(startNanos);
+        out.writeLong(durationNanos);
+        out.writeUTF(method);
+        out.writeUTF(uri);
+        writeBytes(out, requestBody);
+        out.writeInt(status);
+        writeBytes(out, body == null ? null : body.getBytes(StandardCharsets.UTF_8));
+        out.writeInt(cookies.length);
+        for (String cookie : cookies) {
+            out.writeUTF(cookie);
+        }
+        out.writeBoolean(aborted);
+    }
+
+    /**
+     * @return the next record or null at the end of the file
+     */
+    static TrafficRecord read(DataInputStream in) throws IOException {
+        long startNanos;
+        try {
+            startNanos = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        long durationNanos = in.readLong();
+        String method = in.readUTF();
+        String uri = in.readUTF();
+        byte[] requestBody = readBytes(in);
+        int status = in.readInt();
+        byte[] body = readBytes(in);
+        String[] cookies = new String[in.readInt()];
+        for (int i = 0; i < cookies.length; i++) {
+            cookies[i] = in.readUTF();
+        }
+        boolean aborted = in.readBoolean();
+        return new TrafficRecord(startNanos, durationNanos, method, uri, requestBody, status,
+                body == null ? null : new String(body, StandardCharsets.UTF_8), cookies, aborted);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
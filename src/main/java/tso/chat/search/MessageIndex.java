@@ -0,0 +1,226 @@
+package tso.chat.search;
+
+import tso.chat.ChatMessage;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory inverted index over the most recent chat messages.
+ * <p>
+ * Messages are appended to the current segment. When it is full a new segment is started, and when there are more
+ * than {@code maxSegments} segments the oldest one is dropped as a whole, so memory stays bounded at roughly
+ * {@code segmentSize * maxSegments} messages and nothing has to be removed term by term.
+ * <p>
+ * Messages are added by a single thread (usually the subscriber of the chat stream), searches can run
+ * from any number of threads.
+ */
+public class MessageIndex implements Consumer<ChatMessage> {
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param segmentSize  messages per segment
+     * @param maxSegments  segments kept before the oldest one is evicted
+     */
+    public MessageIndex(int segmentSize, int maxSegments) {
+        if (segmentSize <= 0 || maxSegments <= 0) {
+            throw new IllegalArgumentException("segment size and count must be positive");
+        }
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Adds the message to the index, see {@link #add(ChatMessage)}.
+     * This lets the index be fed directly by a {@link tso.chat.stream.ConsumerSubscriber}.
+     */
+    @Override
+    public void accept(ChatMessage message) {
+        add(message);
+    }
+
+    public void add(ChatMessage message) {
+        lock.writeLock().lock();
+        try {
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.isFull()) {
+                segment = new Segment(segmentSize);
+                segments.addLast(segment);
+                if (segments.size() > maxSegments) {
+                    segments.pollFirst();
+                }
+            }
+            segment.add(message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return messages where the field contains the term, newest first
+     */
+    public List<ChatMessage> search(SearchField field, String term, int limit) {
+        String key = normalize(term);
+        List<ChatMessage> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Iterator<Segment> it = segments.descendingIterator();
+            while (it.hasNext() && result.size() < limit) {
+                Segment segment = it.next();
+                segment.collect(segment.postings(field).get(key), result, limit);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * @return messages where the field contains a term starting with the prefix, newest first
+     */
+    public List<ChatMessage> searchPrefix(SearchField field, String prefix, int limit) {
+        String from = normalize(prefix);
+        String to = from + Character.MAX_VALUE;
+        List<ChatMessage> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Iterator<Segment> it = segments.descendingIterator();
+            while (it.hasNext() && result.size() < limit) {
+                Segment segment = it.next();
+                Collection<Postings> matches = segment.postings(field).subMap(from, to).values();
+                if (matches.size() == 1) {
+                    segment.collect(matches.iterator().next(), result, limit);
+                } else if (!matches.isEmpty()) {
+                    segment.collect(Postings.union(matches), result, limit);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int size = 0;
+            for (Segment segment : segments) {
+                size += segment.count;
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static String normalize(String term) {
+        return term == null ? "" : term.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits a text into lower case words made of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static class Segment {
+        private final ChatMessage[] messages;
+        private final EnumMap<SearchField, TreeMap<String, Postings>> fields = new EnumMap<>(SearchField.class);
+        private int count;
+
+        private Segment(int size) {
+            messages = new ChatMessage[size];
+            for (SearchField field : SearchField.values()) {
+                fields.put(field, new TreeMap<>());
+            }
+        }
+
+        private boolean isFull() {
+            return count == messages.length;
+        }
+
+        private TreeMap<String, Postings> postings(SearchField field) {
+            return fields.get(field);
+        }
+
+        private void add(ChatMessage message) {
+            int doc = count;
+            messages[count++] = message;
+            for (String token : tokenize(message.getText())) {
+                index(SearchField.TEXT, token, doc);
+            }
+            index(SearchField.SENDER_NAME, message.getSenderName(), doc);
+            index(SearchField.SENDER_GUILD, message.getSenderGuild(), doc);
+            index(SearchField.CHANNEL, message.getChannel(), doc);
+        }
+
+        private void index(SearchField field, String term, int doc) {
+            if (term == null || term.isEmpty()) {
+                return;
+            }
+            fields.get(field).computeIfAbsent(normalize(term), k -> new Postings()).add(doc);
+        }
+
+        private void collect(Postings postings, List<ChatMessage> result, int limit) {
+            if (postings == null) {
+                return;
+            }
+            for (int i = postings.size - 1; i >= 0 && result.size() < limit; i--) {
+                result.add(messages[postings.docs[i]]);
+            }
+        }
+    }
+
+    /**
+     * Ascending list of message positions within a segment.
+     */
+    private static class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        private void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) {
+                // the same word twice in one message
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        private static Postings union(Collection<Postings> lists) {
+            TreeSet<Integer> all = new TreeSet<>();
+            for (Postings list : lists) {
+                for (int i = 0; i < list.size; i++) {
+                    all.add(list.docs[i]);
+                }
+            }
+            Postings union = new Postings();
+            for (int doc : all) {
+                union.add(doc);
+            }
+            return union;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package tso.chat.search;
+
+/**
+ * Parts of a {@link tso.chat.ChatMessage} which are indexed by {@link MessageIndex}.
+ * <p>
+ * The text is split into words, the other fields are indexed as a single term. All terms are lower case.
+ */
+public enum SearchField {
+    TEXT, SENDER_NAME, SENDER_GUILD, CHANNEL
+}
@@ -0,0 +1,54 @@
+package tso.chat.stream;
+
+import tso.chat.ChatMessage;
+
+import java.util.ArrayDeque;
+
+/**
+ * In-memory buffer of a fixed capacity which drops either the newest or the oldest message when it is full.
+ */
+class BoundedMessageBuffer implements MessageBuffer {
+    private final ArrayDeque<ChatMessage> messages;
+    private final int capacity;
+    private final boolean dropOldest;
+    private long dropped;
+
+    BoundedMessageBuffer(int capacity, OverflowStrategy strategy) {
+        this.messages = new ArrayDeque<>(capacity);
+        this.capacity = capacity;
+        this.dropOldest = strategy == OverflowStrategy.DROP_OLDEST;
+    }
+
+    @Override
+    public synchronized void offer(ChatMessage message) {
+        if (messages.size() < capacity) {
+            messages.addLast(message);
+            return;
+        }
+        dropped++;
+        if (dropOldest) {
+            messages.pollFirst();
+            messages.addLast(message);
+        }
+    }
+
+    @Override
+    public synchronized ChatMessage poll() {
+        return messages.pollFirst();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    @Override
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public synchronized void close() {
+        messages.clear();
+    }
+}
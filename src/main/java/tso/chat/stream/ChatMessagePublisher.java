@@ -0,0 +1,248 @@
+package tso.chat.stream;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import tso.chat.ChatMessage;
+import tso.chat.Connection;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Publishes messages of a {@link Connection} to any number of subscribers honouring their demand.
+ * <p>
+ * The chat loop of the connection runs continuously from the first subscription until {@link #close()},
+ * no matter how fast subscribers consume, so the server never times the session out. Each subscriber gets
+ * its own {@link MessageBuffer}: a slow subscriber only overflows its own buffer and never delays the others.
+ * <p>
+ * Subscribers are called on the given executor, never on the polling thread. The executor must be able to run
+ * the polling task, which blocks until the publisher is closed, alongside the delivery tasks.
+ * <p>
+ * If the chat loop fails, every subscriber gets the error at once, without the messages still buffered for it,
+ * and so does every later subscriber: the publisher is finished and a new one is needed.
+ */
+public class ChatMessagePublisher implements Publisher<ChatMessage>, AutoCloseable {
+    private final Connection connection;
+    private final Executor executor;
+    private final Supplier<MessageBuffer> buffers;
+    private final List<MessageSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+    // the error the chat loop died with
+    private volatile Throwable failure;
+    private volatile Thread pollThread;
+    // counted down when the chat loop has returned for good, or will never run
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @param buffers  creates a buffer for every new subscriber, see {@link MessageBuffers#of(OverflowStrategy, int)}
+     */
+    public ChatMessagePublisher(Connection connection, Executor executor, Supplier<MessageBuffer> buffers) {
+        this.connection = connection;
+        this.executor = executor;
+        this.buffers = buffers;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ChatMessage> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        MessageSubscription subscription = new MessageSubscription(subscriber, buffers.get());
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        // added first, so either the ending chat loop sees the subscription or it is seen ended here
+        if (closed || failure != null) {
+            subscriptions.remove(subscription);
+            subscription.terminate(failure);
+            return;
+        }
+        if (started.compareAndSet(false, true)) {
+            executor.execute(this::poll);
+        }
+    }
+
+    /**
+     * @return messages thrown away by the buffers of all current subscribers
+     */
+    public long getDropped() {
+        long dropped = 0;
+        for (MessageSubscription subscription : subscriptions) {
+            dropped += subscription.buffer.getDropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * Stops the chat loop and completes all subscribers once they have consumed what is left in their buffers.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread = pollThread;
+        if (thread != null) {
+            thread.interrupt();
+            connection.abort();
+        }
+        if (!started.getAndSet(true)) {
+            terminateAll(null);
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Waits until the chat loop has returned after {@link #close()}, so the connection is no longer used by
+     * this publisher, e.g. before its session is exported.
+     * @return false if the chat loop is still running after the timeout
+     */
+    public boolean awaitStopped(long timeout, TimeUnit unit) throws InterruptedException {
+        return stopped.await(timeout, unit);
+    }
+
+    private void poll() {
+        pollThread = Thread.currentThread();
+        try {
+            while (!closed) {
+                ChatMessage message = connection.chatLoop();
+                if (message == null) {
+                    // either a message without text or the loop was interrupted by close()
+                    Thread.interrupted();
+                    continue;
+                }
+                for (MessageSubscription subscription : subscriptions) {
+                    subscription.offer(message);
+                }
+            }
+            terminateAll(null);
+        } catch (RuntimeException e) {
+            failure = e;
+            terminateAll(e);
+        } finally {
+            pollThread = null;
+            Thread.interrupted();
+            stopped.countDown();
+        }
+    }
+
+    private void terminateAll(Throwable error) {
+        for (MessageSubscription subscription : subscriptions) {
+            subscription.terminate(error);
+        }
+    }
+
+    private class MessageSubscription implements Subscription {
+        private final Subscriber<? super ChatMessage> subscriber;
+        private final MessageBuffer buffer;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile Throwable error;
+        // touched only inside drain()
+        private boolean terminated;
+
+        private MessageSubscription(Subscriber<? super ChatMessage> subscriber, MessageBuffer buffer) {
+            this.subscriber = subscriber;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                terminate(new IllegalArgumentException("§3.9: request must be positive, was " + n));
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            schedule();
+        }
+
+        private void offer(ChatMessage message) {
+            if (!cancelled) {
+                buffer.offer(message);
+                schedule();
+            }
+        }
+
+        private void terminate(Throwable error) {
+            this.error = error;
+            done = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                if (terminated) {
+                    return;
+                }
+                if (cancelled) {
+                    terminated = true;
+                    buffer.close();
+                    return;
+                }
+                if (done && error != null) {
+                    // an error is not queued behind the buffered messages
+                    finish();
+                    return;
+                }
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand && !cancelled) {
+                    ChatMessage message = buffer.poll();
+                    if (message == null) {
+                        break;
+                    }
+                    subscriber.onNext(message);
+                    emitted++;
+                }
+                if (done && buffer.isEmpty() && !cancelled) {
+                    finish();
+                    return;
+                }
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void finish() {
+            terminated = true;
+            subscriptions.remove(this);
+            buffer.close();
+            if (error == null) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package tso.chat.stream;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.function.Consumer;
+
+/**
+ * Subscriber with unbounded demand which hands every item to a {@link Consumer}.
+ * <p>
+ * Useful for stages which are cheap enough to keep up with the chat, such as indexing. Slow stages should
+ * request in batches instead, so their {@link MessageBuffer} takes the overflow.
+ * <p>
+ * The error ending the stream is kept for {@link #getError()} and passed to the error handler, if there is one.
+ */
+public class ConsumerSubscriber<T> implements Subscriber<T> {
+    private final Consumer<? super T> consumer;
+    private final Consumer<? super Throwable> errorHandler;
+    private volatile Subscription subscription;
+    private volatile Throwable error;
+
+    public ConsumerSubscriber(Consumer<? super T> consumer) {
+        this(consumer, null);
+    }
+
+    /**
+     * @param errorHandler  gets the error ending the stream, null to only keep it
+     */
+    public ConsumerSubscriber(Consumer<? super T> consumer, Consumer<? super Throwable> errorHandler) {
+        this.consumer = consumer;
+        this.errorHandler = errorHandler;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(T item) {
+        consumer.accept(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        if (errorHandler != null) {
+            errorHandler.accept(throwable);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    /**
+     * @return the error which ended the stream, null while it runs or if it completed
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    public void cancel() {
+        Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package tso.chat.stream;
+
+import tso.chat.Channel;
+
+/**
+ * Priority lanes of {@link PriorityDispatcher}, from the most latency sensitive to the least.
+ */
+public enum Lane {
+    /**
+     * Private messages and guild chats: few messages, each of them addressed to the player. A single worker keeps
+     * a conversation in order.
+     */
+    URGENT(256, 1, OverflowStrategy.SPILL_TO_DISK),
+    /**
+     * Trade, help and any room not known to be spam.
+     */
+    NORMAL(1024, 1, OverflowStrategy.DROP_OLDEST),
+    /**
+     * Global channels, which flood under load and are the first to lose messages.
+     */
+    BULK(1024, 1, OverflowStrategy.DROP_OLDEST);
+
+    private static final String PRIVATE = "private";
+
+    private final LaneBudget defaultBudget;
+
+    Lane(int capacity, int workers, OverflowStrategy strategy) {
+        this.defaultBudget = new LaneBudget(capacity, workers, strategy);
+    }
+
+    public LaneBudget getDefaultBudget() {
+        return defaultBudget;
+    }
+
+    /**
+     * @param channel  the channel of a decoded message, e.g. global-2, gc_123 or private
+     */
+    public static Lane of(String channel) {
+        if (channel == null) {
+            return NORMAL;
+        }
+        if (PRIVATE.equals(channel) || channel.startsWith(Channel.GUILD.toString())
+                || channel.startsWith(Channel.GUILD_OFFICERS.toString())) {
+            return URGENT;
+        }
+        if (channel.startsWith("global")) {
+            return BULK;
+        }
+        return NORMAL;
+    }
+}
@@ -0,0 +1,35 @@
+package tso.chat.stream;
+
+/**
+ * Queue capacity, worker threads and overflow behaviour of one {@link Lane}.
+ */
+public class LaneBudget {
+    private final int capacity;
+    private final int workers;
+    private final OverflowStrategy strategy;
+
+    /**
+     * @param capacity  how many messages may wait in the lane, see {@link MessageBuffers#of(OverflowStrategy, int)}
+     * @param workers  how many threads deliver the messages of the lane
+     */
+    public LaneBudget(int capacity, int workers, OverflowStrategy strategy) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        }
+        this.capacity = capacity;
+        this.workers = workers;
+        this.strategy = strategy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public OverflowStrategy getStrategy() {
+        return strategy;
+    }
+}
@@ -0,0 +1,32 @@
+package tso.chat.stream;
+
+import tso.chat.ChatMessage;
+
+/**
+ * Holds messages which arrived from the chat server but were not requested by the subscriber yet.
+ * <p>
+ * The chat loop never waits for a subscriber, so a buffer must always accept a message: when it is full
+ * it decides what to sacrifice according to its {@link OverflowStrategy}.
+ * Implementations must be thread safe: messages are offered by the polling thread and taken by whichever
+ * thread happens to deliver them.
+ */
+public interface MessageBuffer extends AutoCloseable {
+
+    void offer(ChatMessage message);
+
+    /**
+     * @return the oldest message in the buffer or null if the buffer is empty
+     */
+    ChatMessage poll();
+
+    boolean isEmpty();
+
+    /**
+     * @return how many messages were thrown away because the buffer was full
+     */
+    long getDropped();
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,28 @@
+package tso.chat.stream;
+
+import java.util.function.Supplier;
+
+/**
+ * Factory methods for {@link MessageBuffer} implementations.
+ */
+public final class MessageBuffers {
+
+    private MessageBuffers() {
+    }
+
+    /**
+     * @param capacity  how many messages are kept in memory
+     * @return a supplier creating a new buffer for every subscriber
+     */
+    public static Supplier<MessageBuffer> of(OverflowStrategy strategy, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        switch (strategy) {
+            case SPILL_TO_DISK:
+                return () -> new SpillingMessageBuffer(capacity);
+            default:
+                return () -> new BoundedMessageBuffer(capacity, strategy);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package tso.chat.stream;
+
+/**
+ * What a {@link MessageBuffer} does with a new message when it is full.
+ */
+public enum OverflowStrategy {
+    /**
+     * The new message is thrown away, the buffer keeps the older ones.
+     */
+    DROP_LATEST,
+    /**
+     * The oldest message in the buffer is thrown away to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Messages which do not fit in memory are written to a temporary file and read back in order.
+     */
+    SPILL_TO_DISK
+}
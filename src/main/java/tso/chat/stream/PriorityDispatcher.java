@@ -0,0 +1,154 @@
+package tso.chat.stream;
+
+import tso.chat.ChatMessage;
+import tso.chat.Connection;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Routes decoded messages into priority {@link Lane}s, so a private or guild message does not wait behind
+ * a flood of global chat.
+ * <p>
+ * Every lane has its own bounded buffer and its own worker threads, which pass the messages to the consumer.
+ * A lane which falls behind overflows only its own buffer. The consumer is therefore called concurrently,
+ * and messages of different lanes may arrive out of order. Every lane has one worker by default and delivers
+ * in order; a budget with several workers gives that up, e.g. for the private messages of one sender.
+ */
+public class PriorityDispatcher implements Consumer<ChatMessage>, AutoCloseable {
+    private final Consumer<ChatMessage> consumer;
+    private final Map<Lane, LaneQueue> lanes = new EnumMap<>(Lane.class);
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Uses the default budget of every lane.
+     */
+    public PriorityDispatcher(Consumer<ChatMessage> consumer) {
+        this(consumer, new EnumMap<>(Lane.class));
+    }
+
+    /**
+     * @param budgets  budgets of the lanes which should not use their default
+     */
+    public PriorityDispatcher(Consumer<ChatMessage> consumer, Map<Lane, LaneBudget> budgets) {
+        this.consumer = consumer;
+        for (Lane lane : Lane.values()) {
+            LaneBudget budget = budgets.getOrDefault(lane, lane.getDefaultBudget());
+            LaneQueue queue = new LaneQueue(MessageBuffers.of(budget.getStrategy(), budget.getCapacity()).get());
+            lanes.put(lane, queue);
+            for (int i = 1; i <= budget.getWorkers(); i++) {
+                Thread worker = new Thread(() -> work(queue), "lane-" + lane.name().toLowerCase(Locale.ROOT) + "-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+            }
+        }
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Queues the message in its lane, never blocks.
+     */
+    @Override
+    public void accept(ChatMessage message) {
+        if (closed) {
+            throw new IllegalStateException("dispatcher is closed");
+        }
+        LaneQueue queue = lanes.get(Lane.of(message.getChannel()));
+        queue.buffer.offer(message);
+        queue.signal.release();
+    }
+
+    /**
+     * Runs the chat loop of the connection and dispatches its messages until the calling thread is interrupted
+     * or the dispatcher is closed.
+     */
+    public void run(Connection connection) {
+        while (!closed && !Thread.currentThread().isInterrupted()) {
+            ChatMessage message = connection.chatLoop();
+            if (message != null && !closed) {
+                accept(message);
+            }
+        }
+    }
+
+    /**
+     * @return how many messages of the lane were passed to the consumer
+     */
+    public long getDelivered(Lane lane) {
+        return lanes.get(lane).delivered.get();
+    }
+
+    /**
+     * @return how many messages of the lane were thrown away because its buffer was full
+     */
+    public long getDropped(Lane lane) {
+        return lanes.get(lane).buffer.getDropped();
+    }
+
+    /**
+     * @return how many messages of the lane made the consumer throw
+     */
+    public long getFailed(Lane lane) {
+        return lanes.get(lane).failed.get();
+    }
+
+    /**
+     * Stops accepting messages and waits until the workers have delivered what is left in the lanes.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        for (LaneQueue queue : lanes.values()) {
+            queue.signal.release(workers.size());
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        for (LaneQueue queue : lanes.values()) {
+            queue.buffer.close();
+        }
+    }
+
+    private void work(LaneQueue queue) {
+        while (true) {
+            try {
+                queue.signal.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // a buffer which dropped the new message leaves a permit without a message
+            ChatMessage message = queue.buffer.poll();
+            if (message == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                consumer.accept(message);
+                queue.delivered.incrementAndGet();
+            } catch (RuntimeException e) {
+                // one bad message must not take the worker of the lane down
+                queue.failed.incrementAndGet();
+            }
+        }
+    }
+
+    private static class LaneQueue {
+        private final MessageBuffer buffer;
+        private final Semaphore signal = new Semaphore(0);
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        private LaneQueue(MessageBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package tso.chat.stream;
+
+import tso.chat.ChatMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+
+/**
+ * Buffer which keeps up to {@code capacity} messages in memory and appends the rest to a temporary file.
+ * <p>
+ * Memory always holds the oldest messages, the file holds the newer ones, so the order is preserved.
+ * The file is truncated every time it has been read to the end and deleted when the buffer is closed.
+ */
+class SpillingMessageBuffer implements MessageBuffer {
+    private final ArrayDeque<ChatMessage> memory;
+    private final int capacity;
+    private File file;
+    private RandomAccessFile spill;
+    private long readPosition;
+    private long writePosition;
+    private int spilled;
+
+    SpillingMessageBuffer(int capacity) {
+        this.memory = new ArrayDeque<>(capacity);
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void offer(ChatMessage message) {
+        if (spilled == 0 && memory.size() < capacity) {
+            memory.addLast(message);
+            return;
+        }
+        try {
+            RandomAccessFile out = spillFile();
+            out.seek(writePosition);
+            write(out, message);
+            writePosition = out.getFilePointer();
+            spilled++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized ChatMessage poll() {
+        ChatMessage message = memory.pollFirst();
+        if (message != null || spilled == 0) {
+            return message;
+        }
+        try {
+            spill.seek(readPosition);
+            message = read(spill);
+            readPosition = spill.getFilePointer();
+            if (--spilled == 0) {
+                spill.setLength(0);
+                readPosition = 0;
+                writePosition = 0;
+            }
+            return message;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return memory.isEmpty() && spilled == 0;
+    }
+
+    @Override
+    public long getDropped() {
+        return 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        memory.clear();
+        spilled = 0;
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                // nothing useful can be done, the file is deleted anyway
+            }
+            file.delete();
+            spill = null;
+        }
+    }
+
+    private RandomAccessFile spillFile() throws IOException {
+        if (spill == null) {
+            file = File.createTempFile("tso-chat-", ".spill");
+            file.deleteOnExit();
+            spill = new RandomAccessFile(file, "rw");
+        }
+        return spill;
+    }
+
+    private static void write(RandomAccessFile out, ChatMessage message) throws IOException {
+        writeNullable(out, message.getChannel());
+        writeNullable(out, message.getSenderGuild());
+        writeNullable(out, message.getSenderName());
+        writeNullable(out, message.getSenderId());
+        writeNullable(out, message.getDateTime().toString());
+        writeNullable(out, message.getText());
+    }
+
+    private static ChatMessage read(RandomAccessFile in) throws IOException {
+        String channel = readNullable(in);
+        String guild = readNullable(in);
+        String name = readNullable(in);
+        String id = readNullable(in);
+        LocalDateTime dateTime = LocalDateTime.parse(readNullable(in));
+        String text = readNullable(in);
+        return new ChatMessage(channel, guild, name, id, dateTime, text);
+    }
+
+    private static void writeNullable(RandomAccessFile out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(RandomAccessFile in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,59 @@
+package tso.chat.trade;
+
+import tso.chat.ChatMessage;
+
+/**
+ * A buy or sell offer extracted from a trade channel message.
+ */
+public class Offer {
+    public enum Side {
+        BUY, SELL
+    }
+
+    private final Side side;
+    private final String item;
+    private final long quantity;
+    private final long price;
+    private final ChatMessage source;
+
+    public Offer(Side side, String item, long quantity, long price, ChatMessage source) {
+        this.side = side;
+        this.item = item;
+        this.quantity = quantity;
+        this.price = price;
+        this.source = source;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    /**
+     * @return the canonical item name, see {@link OfferGrammar}
+     */
+    public String getItem() {
+        return item;
+    }
+
+    /**
+     * @return the offered amount, 1 if the message doesn't say
+     */
+    public long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * @return the price for the whole quantity
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    public double getUnitPrice() {
+        return (double) price / quantity;
+    }
+
+    public ChatMessage getSource() {
+        return source;
+    }
+}
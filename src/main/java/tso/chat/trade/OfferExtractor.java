@@ -0,0 +1,74 @@
+package tso.chat.trade;
+
+import tso.chat.Channel;
+import tso.chat.ChatMessage;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Pipeline stage which parses trade channel messages into offers on a worker pool.
+ * <p>
+ * Messages from other channels are dropped right away on the calling thread. Parsed offers are handed to the
+ * listener on the worker thread, usually a {@link PriceAggregator}. The extractor can be fed from the chat stream
+ * with a {@link tso.chat.stream.ConsumerSubscriber}, so the delivering thread only pays for the channel check.
+ */
+public class OfferExtractor implements Consumer<ChatMessage> {
+    private final OfferGrammar grammar;
+    private final ExecutorService workers;
+    private final Consumer<Offer> listener;
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong offers = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public OfferExtractor(OfferGrammar grammar, ExecutorService workers, Consumer<Offer> listener) {
+        this.grammar = grammar;
+        this.workers = workers;
+        this.listener = listener;
+    }
+
+    @Override
+    public void accept(ChatMessage message) {
+        if (!Channel.TRADE.toString().equals(message.getChannel())) {
+            return;
+        }
+        try {
+            workers.execute(() -> extract(message));
+        } catch (RejectedExecutionException e) {
+            // the pool is saturated or shut down, losing a trade message is better than stalling the chat
+            rejected.incrementAndGet();
+        }
+    }
+
+    private void extract(ChatMessage message) {
+        parsed.incrementAndGet();
+        Offer offer = grammar.parse(message);
+        if (offer != null) {
+            offers.incrementAndGet();
+            listener.accept(offer);
+        }
+    }
+
+    /**
+     * @return how many trade messages were parsed
+     */
+    public long getParsed() {
+        return parsed.get();
+    }
+
+    /**
+     * @return how many of the parsed messages were offers
+     */
+    public long getOffers() {
+        return offers.get();
+    }
+
+    /**
+     * @return how many trade messages were not parsed because the worker pool refused them
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+}
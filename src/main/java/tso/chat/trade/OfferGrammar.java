@@ -0,0 +1,107 @@
+package tso.chat.trade;
+
+import tso.chat.ChatMessage;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Describes how trade offers are written in chat and parses them.
+ * <p>
+ * A message is an offer when it contains a buy or a sell keyword, an item alias and a price: a number after
+ * one of the price keywords, e.g. "WTS granite x500 for 120" or "продам гранит 500 за 120".
+ * A number right before or after the item is its quantity.
+ * <p>
+ * All patterns are compiled once in the constructor, a grammar is immutable and can be shared between threads.
+ */
+public class OfferGrammar {
+    private static final List<String> DEFAULT_BUY_WORDS = Arrays.asList("wtb", "buy", "buying", "куплю", "покупаю");
+    private static final List<String> DEFAULT_SELL_WORDS = Arrays.asList("wts", "sell", "selling", "продам", "продаю");
+    private static final List<String> DEFAULT_PRICE_WORDS = Arrays.asList("for", "за", "@", "price", "цена");
+
+    private final Pattern buyPattern;
+    private final Pattern sellPattern;
+    private final Pattern itemPattern;
+    private final Pattern pricePattern;
+    private final Map<String, String> items = new HashMap<>();
+
+    /**
+     * @param itemAliases  maps every spelling used in chat (lower case) to the canonical item name
+     */
+    public OfferGrammar(Collection<String> buyWords, Collection<String> sellWords, Collection<String> priceWords,
+                        Map<String, String> itemAliases) {
+        buyPattern = wordsPattern(buyWords);
+        sellPattern = wordsPattern(sellWords);
+        for (Map.Entry<String, String> alias : itemAliases.entrySet()) {
+            items.put(alias.getKey().toLowerCase(Locale.ROOT), alias.getValue());
+        }
+        // longer aliases first, so "marble column" wins over "marble"
+        List<String> aliases = new ArrayList<>(items.keySet());
+        aliases.sort(Comparator.comparingInt(String::length).reversed());
+        itemPattern = Pattern.compile("(?:(\\d+)\\s*[x×*]?\\s*)?(?<![\\p{L}\\d])(" + alternatives(aliases) + ")(?![\\p{L}])" +
+                "(?:\\s*[x×*]?\\s*(\\d+))?", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        pricePattern = Pattern.compile("(?:" + alternatives(priceWords) + ")\\s*(\\d+)",
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    public static OfferGrammar withDefaultKeywords(Map<String, String> itemAliases) {
+        return new OfferGrammar(DEFAULT_BUY_WORDS, DEFAULT_SELL_WORDS, DEFAULT_PRICE_WORDS, itemAliases);
+    }
+
+    /**
+     * @return the offer or null if the message is not an offer this grammar understands
+     */
+    public Offer parse(ChatMessage message) {
+        String text = message.getText();
+        if (text == null || items.isEmpty()) {
+            return null;
+        }
+        Offer.Side side;
+        if (sellPattern.matcher(text).find()) {
+            side = Offer.Side.SELL;
+        } else if (buyPattern.matcher(text).find()) {
+            side = Offer.Side.BUY;
+        } else {
+            return null;
+        }
+        Matcher price = pricePattern.matcher(text);
+        if (!price.find()) {
+            return null;
+        }
+        Matcher item = itemPattern.matcher(text);
+        if (!item.find()) {
+            return null;
+        }
+        String quantity = item.group(1) != null ? item.group(1) : item.group(3);
+        // "granite 500 for 120": the number after the item must not be the price itself
+        if (item.group(3) != null && item.start(3) >= price.start()) {
+            quantity = item.group(1);
+        }
+        try {
+            long amount = quantity == null ? 1 : Long.parseLong(quantity);
+            long cost = Long.parseLong(price.group(1));
+            if (amount <= 0) {
+                return null;
+            }
+            String canonical = items.get(item.group(2).toLowerCase(Locale.ROOT));
+            return new Offer(side, canonical, amount, cost, message);
+        } catch (NumberFormatException e) {
+            // a number too long for a long is not a price anyone means
+            return null;
+        }
+    }
+
+    private static Pattern wordsPattern(Collection<String> words) {
+        return Pattern.compile("(?<![\\p{L}\\d])(?:" + alternatives(words) + ")(?![\\p{L}\\d])",
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    private static String alternatives(Collection<String> words) {
+        StringJoiner joiner = new StringJoiner("|");
+        for (String word : words) {
+            joiner.add(Pattern.quote(word));
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package tso.chat.trade;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps min, max and median unit prices per item and side over a sliding time window.
+ * <p>
+ * Every offer only updates the window of its own item, so offers of different items can be added concurrently.
+ */
+public class PriceAggregator implements Consumer<Offer> {
+    private final Duration window;
+    private final Map<String, PriceWindow> windows = new ConcurrentHashMap<>();
+
+    public PriceAggregator(Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    public void accept(Offer offer) {
+        PriceWindow prices = windows.computeIfAbsent(key(offer.getItem(), offer.getSide()), k -> new PriceWindow(window));
+        synchronized (prices) {
+            prices.add(offer.getSource().getDateTime(), offer.getUnitPrice());
+        }
+    }
+
+    /**
+     * @return the statistics of the window ending now or null if there were no offers in it
+     */
+    public PriceStats getStats(String item, Offer.Side side) {
+        PriceWindow prices = windows.get(key(item, side));
+        if (prices == null) {
+            return null;
+        }
+        synchronized (prices) {
+            prices.expire(LocalDateTime.now());
+            if (prices.size() == 0) {
+                return null;
+            }
+            return new PriceStats(item, side, prices.size(), prices.min(), prices.max(), prices.median());
+        }
+    }
+
+    /**
+     * @return the statistics of every item and side which had offers within the window
+     */
+    public List<PriceStats> getStats() {
+        List<PriceStats> stats = new ArrayList<>();
+        for (String key : windows.keySet()) {
+            int separator = key.lastIndexOf('|');
+            PriceStats itemStats = getStats(key.substring(0, separator), Offer.Side.valueOf(key.substring(separator + 1)));
+            if (itemStats != null) {
+                stats.add(itemStats);
+            }
+        }
+        return stats;
+    }
+
+    private static String key(String item, Offer.Side side) {
+        return item + "|" + side.name();
+    }
+}
@@ -0,0 +1,49 @@
+package tso.chat.trade;
+
+/**
+ * Snapshot of the unit prices of an item over the aggregation window.
+ */
+public class PriceStats {
+    private final String item;
+    private final Offer.Side side;
+    private final int offers;
+    private final double min;
+    private final double max;
+    private final double median;
+
+    PriceStats(String item, Offer.Side side, int offers, double min, double max, double median) {
+        this.item = item;
+        this.side = side;
+        this.offers = offers;
+        this.min = min;
+        this.max = max;
+        this.median = median;
+    }
+
+    public String getItem() {
+        return item;
+    }
+
+    public Offer.Side getSide() {
+        return side;
+    }
+
+    /**
+     * @return how many offers are inside the window
+     */
+    public int getOffers() {
+        return offers;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMedian() {
+        return median;
+    }
+}
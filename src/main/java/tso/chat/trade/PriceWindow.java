@@ -0,0 +1,126 @@
+package tso.chat.trade;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.TreeMap;
+
+/**
+ * Unit prices of one item and side over a sliding time window.
+ * <p>
+ * Prices are kept in two sorted multisets split at the median, so adding a price, expiring an old one and reading
+ * min, max or median are all logarithmic and the history is never re-scanned.
+ * Not thread safe, {@link PriceAggregator} guards it.
+ */
+class PriceWindow {
+    private final Duration length;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    // lower half including the median, upper half; lower.size == upper.size or upper.size + 1
+    private final TreeMap<Double, Integer> lower = new TreeMap<>();
+    private final TreeMap<Double, Integer> upper = new TreeMap<>();
+    private int lowerSize;
+    private int upperSize;
+    private LocalDateTime latest;
+
+    PriceWindow(Duration length) {
+        this.length = length;
+    }
+
+    /**
+     * Prices arrive roughly in time order; one which is already outside the window (e.g. from a history replay)
+     * is ignored.
+     */
+    void add(LocalDateTime time, double price) {
+        if (latest == null || time.isAfter(latest)) {
+            latest = time;
+        } else if (time.isBefore(latest.minus(length))) {
+            return;
+        }
+        entries.addLast(new Entry(time, price));
+        if (lowerSize == 0 || price <= lower.lastKey()) {
+            increment(lower, price);
+            lowerSize++;
+        } else {
+            increment(upper, price);
+            upperSize++;
+        }
+        rebalance();
+        expire(latest);
+    }
+
+    /**
+     * Drops the prices which are older than the window length relative to {@code now}.
+     */
+    void expire(LocalDateTime now) {
+        LocalDateTime limit = now.minus(length);
+        while (!entries.isEmpty() && entries.peekFirst().time.isBefore(limit)) {
+            double price = entries.pollFirst().price;
+            if (lower.containsKey(price)) {
+                decrement(lower, price);
+                lowerSize--;
+            } else {
+                decrement(upper, price);
+                upperSize--;
+            }
+            rebalance();
+        }
+    }
+
+    int size() {
+        return lowerSize + upperSize;
+    }
+
+    double min() {
+        return lower.firstKey();
+    }
+
+    double max() {
+        return upperSize == 0 ? lower.lastKey() : upper.lastKey();
+    }
+
+    double median() {
+        if (lowerSize > upperSize) {
+            return lower.lastKey();
+        }
+        return (lower.lastKey() + upper.firstKey()) / 2;
+    }
+
+    private void rebalance() {
+        if (lowerSize > upperSize + 1) {
+            double moved = lower.lastKey();
+            decrement(lower, moved);
+            lowerSize--;
+            increment(upper, moved);
+            upperSize++;
+        } else if (upperSize > lowerSize) {
+            double moved = upper.firstKey();
+            decrement(upper, moved);
+            upperSize--;
+            increment(lower, moved);
+            lowerSize++;
+        }
+    }
+
+    private static void increment(TreeMap<Double, Integer> set, double value) {
+        set.merge(value, 1, Integer::sum);
+    }
+
+    private static void decrement(TreeMap<Double, Integer> set, double value) {
+        int count = set.get(value);
+        if (count == 1) {
+            set.remove(value);
+        } else {
+            set.put(value, count - 1);
+        }
+    }
+
+    private static class Entry {
+        private final LocalDateTime time;
+        private final double price;
+
+        private Entry(LocalDateTime time, double price) {
+            this.time = time;
+            this.price = price;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+    Turns regions.xml into RegionTable.java at build time, so looking up a region needs no XML parsing.
+-->
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+    <xsl:output method="text" encoding="UTF-8"/>
+
+    <xsl:template match="/regions">package tso.chat;
+
+/**
+ * Generated from regions.xml by src/main/xslt/region-table.xsl, do not edit.
+ */
+final class RegionTable {
+
+    private RegionTable() {
+    }
+
+    /**
+     * @return domain, language and main page of the region followed by number, bb server and chat server
+     * of each realm, or null if the region is not in regions.xml
+     */
+    static String[] lookup(Region region) {
+        switch (region) {
+<xsl:apply-templates select="region"/>            default:
+                return null;
+        }
+    }
+}
+</xsl:template>
+
+    <xsl:template match="region">            case <xsl:value-of select="@name"/>:
+                return new String[]{"<xsl:value-of select="domain"/>", "<xsl:value-of select="language"/>", "<xsl:value-of select="main_page"/>"<xsl:for-each select="realms/realm">,
+                        "<xsl:value-of select="@no"/>", "<xsl:value-of select="bb"/>", "<xsl:value-of select="chat"/>"</xsl:for-each>};
+</xsl:template>
+
+</xsl:stylesheet>
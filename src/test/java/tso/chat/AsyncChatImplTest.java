@@ -0,0 +1,134 @@
+package tso.chat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class AsyncChatImplTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // a connection whose chat loop waits for messages until it is interrupted
+    private static class WaitingConnection extends Connection {
+        private final CountDownLatch polling = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        private final AtomicInteger restarts = new AtomicInteger();
+
+        WaitingConnection() {
+            super("reax@example.com", "secret", Region.RUSSIA);
+        }
+
+        @Override
+        public ChatMessage chatLoop() {
+            polling.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        }
+
+        @Override
+        public void restart() {
+            restarts.incrementAndGet();
+        }
+    }
+
+    @Test
+    void callsRunInTheOrderTheyWereMadeTest() throws Exception {
+        try (FakeBoshServer server = new FakeBoshServer(0);
+             Connection connection = new Connection("reax@example.com", "secret", Region.RUSSIA,
+                     new ClientExchange(server.newClient(server.newConnectionManager())))) {
+            AsyncChat chat = new AsyncChatImpl(connection, executor, 0);
+
+            // none of them waits for the one before, the session chains them
+            CompletableFuture<String> name = chat.connect();
+            CompletableFuture<Map<String, List<ChatMessage>>> history = chat.bindChats(Collections.singletonList("trade"));
+            CompletableFuture<ChatMessage> message = chat.getNewMessage();
+
+            assertEquals("Reax", name.get(5, TimeUnit.SECONDS));
+            assertEquals(15, history.get(5, TimeUnit.SECONDS).get("trade").size());
+            assertEquals("trade", message.get(5, TimeUnit.SECONDS).getChannel());
+        }
+    }
+
+    @Test
+    void timeoutStartsWhenTheCallRunsTest() throws Exception {
+        try (WaitingConnection connection = new WaitingConnection()) {
+            ExecutorService single = Executors.newSingleThreadExecutor();
+            try {
+                AsyncChat chat = new AsyncChatImpl(connection, single, 200);
+                CountDownLatch release = new CountDownLatch(1);
+                single.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+
+                // waits longer than its timeout for the only thread, without running out of time
+                CompletableFuture<Void> restart = chat.restart();
+                TimeUnit.MILLISECONDS.sleep(400);
+                release.countDown();
+                restart.get(5, TimeUnit.SECONDS);
+                assertEquals(1, connection.restarts.get());
+            } finally {
+                single.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void timedOutCallIsInterruptedAndTheNextOneRunsTest() throws Exception {
+        try (WaitingConnection connection = new WaitingConnection()) {
+            AsyncChat chat = new AsyncChatImpl(connection, executor, 100);
+
+            CompletableFuture<ChatMessage> message = chat.getNewMessage();
+            CompletableFuture<Void> restart = chat.restart();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> message.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof TimeoutException);
+            assertTrue(connection.interrupted.await(5, TimeUnit.SECONDS));
+            restart.get(5, TimeUnit.SECONDS);
+            assertEquals(1, connection.restarts.get());
+        }
+    }
+
+    @Test
+    void cancelledCallIsInterruptedAndTheNextOneRunsTest() throws Exception {
+        try (WaitingConnection connection = new WaitingConnection()) {
+            AsyncChat chat = new AsyncChatImpl(connection, executor, 0);
+
+            CompletableFuture<ChatMessage> message = chat.getNewMessage();
+            CompletableFuture<Void> restart = chat.restart();
+            assertTrue(connection.polling.await(5, TimeUnit.SECONDS));
+            message.cancel(true);
+
+            assertTrue(connection.interrupted.await(5, TimeUnit.SECONDS));
+            restart.get(5, TimeUnit.SECONDS);
+            assertEquals(1, connection.restarts.get());
+        }
+    }
+}
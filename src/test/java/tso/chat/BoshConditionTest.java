@@ -0,0 +1,31 @@
+package tso.chat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BoshConditionTest {
+
+    @Test
+    void terminatingConditionsLoseTheSessionTest() {
+        for (String condition : new String[]{"item-not-found", "remote-connection-failed", "system-shutdown", null}) {
+            assertTrue(BoshCondition.fromTerminate(condition).isSessionLost(), String.valueOf(condition));
+        }
+        assertEquals(BoshCondition.REMOTE_CONNECTION_FAILED, BoshCondition.fromTerminate("remote-connection-failed"));
+        assertFalse(BoshCondition.HTTP_ERROR.isSessionLost());
+        assertFalse(BoshCondition.NETWORK.isSessionLost());
+    }
+
+    @Test
+    void remoteConnectionFailedResumesTest() {
+        SessionHealth health = new SessionHealth();
+        health.failure(BoshCondition.REMOTE_CONNECTION_FAILED);
+        assertEquals(SessionHealth.State.RESUMING, health.getState());
+
+        health.resumed();
+        health.failure(BoshCondition.NETWORK);
+        assertEquals(SessionHealth.State.BACKING_OFF, health.getState());
+    }
+}
@@ -0,0 +1,140 @@
+package tso.chat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+class ClientExchangeTest {
+
+    private static final String HISTORY;
+
+    static {
+        StringBuilder body = new StringBuilder("<body xmlns=\"http://jabber.org/protocol/httpbind\">");
+        for (int i = 0; i < 15; i++) {
+            body.append("<message from=\"trade@conference.w03chat01.thesettlersonline.ru/reax\" type=\"groupchat\">")
+                    .append("<body>wts granite ").append(i).append("</body></message>");
+        }
+        HISTORY = body.append("</body>").toString();
+    }
+
+    private HttpServer server;
+    // request bodies as the server decoded them
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean acceptCompressedRequests;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/http-bind/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange http) throws IOException {
+        boolean gzipped = "gzip".equals(http.getRequestHeaders().getFirst("Content-Encoding"));
+        byte[] request = readAll(http.getRequestBody());
+        if (gzipped && !acceptCompressedRequests) {
+            http.sendResponseHeaders(415, -1);
+            http.close();
+            return;
+        }
+        InputStream in = new ByteArrayInputStream(request);
+        received.add(new String(readAll(gzipped ? new GZIPInputStream(in) : in), StandardCharsets.UTF_8));
+        String accepted = String.valueOf(http.getRequestHeaders().getFirst("Accept-Encoding"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = bytes;
+        if (accepted.contains("deflate") && http.getRequestURI().getPath().endsWith("deflate")) {
+            http.getResponseHeaders().set("Content-Encoding", "deflate");
+            out = new DeflaterOutputStream(bytes);
+        } else if (accepted.contains("gzip")) {
+            http.getResponseHeaders().set("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(bytes);
+        }
+        out.write(HISTORY.getBytes(StandardCharsets.UTF_8));
+        out.close();
+        http.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+        http.sendResponseHeaders(200, bytes.size());
+        try (OutputStream body = http.getResponseBody()) {
+            bytes.writeTo(body);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    private HttpPost post(String path, String body) {
+        HttpPost post = new HttpPost("http://127.0.0.1:" + server.getAddress().getPort() + "/http-bind/" + path);
+        post.setEntity(new StringEntity(body, ContentType.TEXT_HTML));
+        return post;
+    }
+
+    private static ClientExchange exchange(boolean compressRequests) {
+        return new ClientExchange(HttpClients.custom().disableContentCompression().build(), compressRequests);
+    }
+
+    @Test
+    void decompressesResponses() throws IOException {
+        try (ClientExchange exchange = exchange(false)) {
+            assertEquals(HISTORY, exchange.execute(post("gzip", "<body/>")).getBody());
+            assertEquals(HISTORY, exchange.execute(post("deflate", "<body/>")).getBody());
+
+            CompressionStats stats = exchange.getCompressionStats();
+            assertEquals(2, stats.getCompressedResponses());
+            assertEquals(2L * HISTORY.length(), stats.getResponseBodyBytes());
+            assertTrue(stats.getResponseRatio() > 5, stats.toString());
+        }
+    }
+
+    @Test
+    void compressesRequestsWhileAccepted() throws IOException {
+        String presences = String.join("", Collections.nCopies(20,
+                "<presence to=\"trade@conference.w03chat01.thesettlersonline.ru/reax\"/>"));
+        try (ClientExchange exchange = exchange(true)) {
+            acceptCompressedRequests = true;
+            exchange.execute(post("gzip", presences));
+            assertTrue(exchange.getCompressionStats().getRequestRatio() > 5);
+
+            acceptCompressedRequests = false;
+            assertEquals(HISTORY, exchange.execute(post("gzip", presences)).getBody());
+            assertFalse(exchange.isCompressingRequests());
+            // small bodies are never compressed
+            exchange.execute(post("gzip", "<body/>"));
+        }
+        assertEquals(3, received.size());
+        assertTrue(received.stream().limit(2).allMatch(presences::equals));
+    }
+}
@@ -0,0 +1,92 @@
+package tso.chat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cycles connect, bind, chat and restart against {@link FakeBoshServer} many times and checks that heap, threads,
+ * file descriptors and pooled HTTP connections stay flat.
+ * <p>
+ * Picked by its class name, so it runs only in the soak profile, which also records the run with Flight Recorder:
+ * {@code mvn -Psoak test -Dsoak.iterations=5000}
+ */
+class ConnectionSoakTest {
+
+    private static final int ITERATIONS = Integer.getInteger("soak.iterations", 2000);
+    // enough for the common pool, the HTTP client and class loading to settle
+    private static final int WARM_UP = Math.min(200, ITERATIONS / 10);
+    private static final long HEAP_SLACK = 16 * 1024 * 1024;
+    private static final int THREAD_SLACK = 2;
+    private static final int DESCRIPTOR_SLACK = 16;
+    private static final List<String> ROOMS = Arrays.asList("trade", "global-1", "gc_123");
+
+    private static class Usage {
+        private final long heap;
+        private final int threads;
+        private final long descriptors;
+
+        private Usage() {
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+            }
+            Runtime runtime = Runtime.getRuntime();
+            heap = runtime.totalMemory() - runtime.freeMemory();
+            threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            descriptors = os instanceof com.sun.management.UnixOperatingSystemMXBean
+                    ? ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount() : -1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("heap %d KiB, %d threads, %d descriptors", heap / 1024, threads, descriptors);
+        }
+    }
+
+    private static void cycle(FakeBoshServer server) throws Exception {
+        PoolingHttpClientConnectionManager pool = server.newConnectionManager();
+        try (Connection connection = new Connection("reax@example.com", "secret", Region.RUSSIA,
+                new ClientExchange(server.newClient(pool)))) {
+            assertEquals("Reax", new ChatImpl(connection).connect());
+            Map<String, List<ChatMessage>> histories = connection.bindChats(ROOMS);
+            assertEquals(15, histories.get("gc_123").size());
+            for (int i = 0; i < 3; i++) {
+                assertNotNull(connection.chatLoop());
+            }
+            connection.restart();
+            assertNotNull(connection.chatLoop());
+            assertEquals(0, pool.getTotalStats().getLeased(), "pooled connections leaked");
+        }
+    }
+
+    @Test
+    void connectionsDoNotLeakTest() throws Exception {
+        try (FakeBoshServer server = new FakeBoshServer(97)) {
+            for (int i = 0; i < WARM_UP; i++) {
+                cycle(server);
+            }
+            Usage before = new Usage();
+            for (int i = WARM_UP; i < ITERATIONS; i++) {
+                cycle(server);
+            }
+            Usage after = new Usage();
+            String report = before + " -> " + after + " after " + ITERATIONS + " sessions, "
+                    + server.getRequests() + " requests";
+            System.out.println(report);
+
+            assertTrue(after.heap - before.heap < HEAP_SLACK, report);
+            assertTrue(after.threads - before.threads <= THREAD_SLACK, report);
+            assertTrue(after.descriptors - before.descriptors <= DESCRIPTOR_SLACK, report);
+        }
+    }
+}
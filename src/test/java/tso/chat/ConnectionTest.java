@@ -0,0 +1,66 @@
+package tso.chat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+class ConnectionTest {
+
+    private static Connection connect(FakeBoshServer server) throws Exception {
+        Connection connection = new Connection("reax@example.com", "secret", Region.RUSSIA,
+                new ClientExchange(server.newClient(server.newConnectionManager())));
+        new ChatImpl(connection).connect();
+        return connection;
+    }
+
+    @Test
+    void historyIsKeyedByRoomTest() throws Exception {
+        try (FakeBoshServer server = new FakeBoshServer(0)) {
+            server.setExtraRoom("moderators");
+            try (Connection connection = connect(server)) {
+                Map<String, List<ChatMessage>> histories =
+                        connection.bindChannels(Arrays.asList(Channel.GLOBAL_1, Channel.GLOBAL_2, Channel.TRADE));
+
+                assertEquals(Arrays.asList("global-1", "global-2", "trade"), Arrays.asList(histories.keySet().toArray()));
+                assertEquals(15, histories.get("global-1").size());
+                assertEquals(15, histories.get("global-2").size());
+                assertEquals(15, histories.get("trade").size());
+            }
+        }
+    }
+
+    @Test
+    void historyAfterPresencesIsCollectedTest() throws Exception {
+        try (FakeBoshServer server = new FakeBoshServer(0)) {
+            server.setPresencesFirst(true);
+            try (Connection connection = connect(server)) {
+                Map<String, List<ChatMessage>> histories = connection.bindChats(Arrays.asList("trade", "gc_42"));
+
+                assertEquals(15, histories.get("trade").size());
+                assertEquals(15, histories.get("gc_42").size());
+            }
+        }
+    }
+
+    @Test
+    void roomFilterSkipsRejectedRoomsBeforeDecodingTest() throws Exception {
+        try (FakeBoshServer server = new FakeBoshServer(0)) {
+            try (Connection connection = connect(server)) {
+                server.setPollRooms("trade", "global-1", "gc_42");
+                connection.setRoomFilter(room -> !Channel.isPublicRoom(room));
+
+                ChatMessage message = connection.chatLoop();
+                assertEquals("gc_42", message.getChannel());
+                assertEquals(2, connection.getSkipped());
+
+                connection.setRoomFilter(null);
+                assertEquals("trade", connection.chatLoop().getChannel());
+                assertEquals(2, connection.getSkipped());
+            }
+        }
+    }
+}
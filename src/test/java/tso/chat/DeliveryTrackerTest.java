@@ -0,0 +1,244 @@
+package tso.chat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import tso.chat.exceptions.DeliveryException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class DeliveryTrackerTest {
+
+    private static final SentMessage TRADE = new SentMessage("trade", null, "wts granite");
+    private static final SentMessage WHISPER = new SentMessage("private", "Reax", "a < b & c");
+
+    private static String echo(PendingSend send) {
+        return "<body xmlns=\"http://jabber.org/protocol/httpbind\"><message from=\"trade@conference.w03chat01"
+                + ".thesettlersonline.ru/Reax\" id=\"" + send.id + "\" type=\"groupchat\"><body>.</body></message></body>";
+    }
+
+    @Test
+    void echoAcknowledgesOnceTest() throws Exception {
+        DeliveryTracker tracker = new DeliveryTracker(60_000, 3, 10);
+        CompletableFuture<Delivery> first = tracker.enqueue(TRADE);
+        CompletableFuture<Delivery> second = tracker.enqueue(TRADE);
+        PendingSend a = tracker.next();
+        PendingSend b = tracker.next();
+        assertNull(tracker.next());
+        assertNotEquals(a.id, b.id);
+        tracker.posted(a);
+        tracker.posted(b);
+
+        assertEquals(1, tracker.acknowledgeEchoes(echo(b)));
+        assertEquals(0, tracker.acknowledgeEchoes(echo(b)));
+        assertTrue(second.isDone());
+        assertFalse(first.isDone());
+        assertEquals(b.id, second.get().getStanzaId());
+        assertEquals(1, tracker.getDelivered());
+        assertEquals(1, tracker.getDuplicates());
+        assertEquals(1, tracker.getPending());
+    }
+
+    @Test
+    void unechoedMessageFailsTest() throws Exception {
+        DeliveryTracker tracker = new DeliveryTracker(20, 3, 10);
+        CompletableFuture<Delivery> delivery = tracker.enqueue(TRADE);
+        tracker.posted(tracker.next());
+
+        TimeUnit.MILLISECONDS.sleep(40);
+        // posting it again would show it twice if only the echo was late
+        assertNull(tracker.next());
+        ExecutionException e = assertThrows(ExecutionException.class, delivery::get);
+        assertTrue(e.getCause() instanceof DeliveryException);
+        assertEquals(0, tracker.getRetries());
+    }
+
+    @Test
+    void failedRequestIsResentBeforeRepostsTest() throws Exception {
+        DeliveryTracker tracker = new DeliveryTracker(20, 3, 10, true);
+        tracker.enqueue(TRADE);
+        PendingSend late = tracker.next();
+        tracker.posted(late);
+        tracker.enqueue(WHISPER);
+        PendingSend broken = tracker.next();
+        tracker.posted(broken);
+        broken.body = "<body rid=\"7\"/>";
+        tracker.attemptFailed(broken, new RuntimeException("connection reset"));
+
+        TimeUnit.MILLISECONDS.sleep(40);
+        assertSame(broken, tracker.next());
+        assertSame(late, tracker.next());
+    }
+
+    @Test
+    void retriesWithTheSameIdTest() throws Exception {
+        DeliveryTracker tracker = new DeliveryTracker(20, 3, 10, true);
+        CompletableFuture<Delivery> delivery = tracker.enqueue(TRADE);
+        PendingSend send = tracker.next();
+        tracker.posted(send);
+        assertNull(tracker.next());
+
+        TimeUnit.MILLISECONDS.sleep(40);
+        assertSame(send, tracker.next());
+        tracker.posted(send);
+        // the echo of the first attempt comes late, the retry is acknowledged by it all the same
+        tracker.acknowledgeEchoes(echo(send));
+        tracker.acknowledgeEchoes(echo(send));
+
+        assertEquals(2, delivery.get().getAttempts());
+        assertEquals(1, tracker.getRetries());
+        assertEquals(1, tracker.getDuplicates());
+        assertEquals(1.0, tracker.getDeliveredRate());
+    }
+
+    @Test
+    void retriesKeepTheSendOrderTest() throws Exception {
+        DeliveryTracker tracker = new DeliveryTracker(20, 3, 10, true);
+        List<PendingSend> sent = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tracker.enqueue(TRADE);
+            PendingSend send = tracker.next();
+            tracker.posted(send);
+            sent.add(send);
+        }
+        tracker.enqueue(WHISPER);
+
+        TimeUnit.MILLISECONDS.sleep(40);
+        for (PendingSend send : sent) {
+            assertSame(send, tracker.next());
+        }
+        assertEquals(WHISPER, tracker.next().message);
+    }
+
+    @Test
+    void acknowledgedMessageIsNotPostedAgainTest() throws Exception {
+        DeliveryTracker tracker = new DeliveryTracker(60_000, 3, 10);
+        tracker.enqueue(TRADE);
+        PendingSend send = tracker.next();
+        tracker.posted(send);
+        tracker.attemptFailed(send, new RuntimeException("connection reset"));
+        assertTrue(tracker.hasQueued());
+
+        // the failed request reached the server after all
+        tracker.acknowledgeEchoes(echo(send));
+        assertFalse(tracker.hasQueued());
+        assertNull(tracker.next());
+    }
+
+    @Test
+    void failsAfterMaxAttemptsTest() throws Exception {
+        DeliveryTracker tracker = new DeliveryTracker(10, 2, 10, true);
+        CompletableFuture<Delivery> delivery = tracker.enqueue(TRADE);
+        for (int i = 0; i < 2; i++) {
+            PendingSend send = tracker.next();
+            tracker.posted(send);
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertNull(tracker.next());
+
+        ExecutionException e = assertThrows(ExecutionException.class, delivery::get);
+        assertTrue(e.getCause() instanceof DeliveryException);
+        assertEquals(1, tracker.getFailed());
+        assertEquals(0.0, tracker.getDeliveredRate());
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    void capacityLimitsNewMessagesTest() {
+        DeliveryTracker tracker = new DeliveryTracker(60_000, 3, 2);
+        tracker.enqueue(TRADE);
+        tracker.enqueue(TRADE);
+        assertThrows(IllegalStateException.class, () -> tracker.enqueue(TRADE));
+
+        tracker.posted(tracker.next());
+        tracker.enqueue(WHISPER);
+        tracker.failAll(new DeliveryException("connection closed"));
+        assertEquals(3, tracker.getFailed());
+        assertFalse(tracker.hasQueued());
+    }
+
+    @Test
+    void connectionResendsFailedRequestWithItsRidTest() throws Exception {
+        try (FakeBoshServer server = new FakeBoshServer(0);
+             Connection connection = new Connection("reax@example.com", "secret", Region.RUSSIA,
+                     new ClientExchange(server.newClient(server.newConnectionManager())))) {
+            new ChatImpl(connection).connect();
+            connection.bindChat("trade");
+            // the server gets the message, its response breaks off
+            server.dropResponses(1);
+
+            CompletableFuture<Delivery> groupchat = connection.send(TRADE);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!groupchat.isDone() && System.nanoTime() < deadline) {
+                connection.chatLoop();
+            }
+
+            assertEquals(2, groupchat.get().getAttempts());
+            assertEquals(Collections.singletonList("wts granite"), server.getSentTexts());
+            assertEquals(1, server.getReplays());
+            assertEquals(0, connection.getDeliveryTracker().getDuplicates());
+        }
+    }
+
+    @Test
+    void connectionFailsLostEchoTest() throws Exception {
+        try (FakeBoshServer server = new FakeBoshServer(0);
+             Connection connection = new Connection("reax@example.com", "secret", Region.RUSSIA,
+                     new ClientExchange(server.newClient(server.newConnectionManager())))) {
+            connection.deliveries = new DeliveryTracker(50, 3, 10);
+            new ChatImpl(connection).connect();
+            connection.bindChat("trade");
+            server.loseEchoes(1);
+
+            CompletableFuture<Delivery> groupchat = connection.send(TRADE);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!groupchat.isDone() && System.nanoTime() < deadline) {
+                connection.chatLoop();
+            }
+
+            assertThrows(ExecutionException.class, groupchat::get);
+            assertEquals(1, server.getSentMessages());
+            assertEquals(0, connection.getDeliveryTracker().getRetries());
+        }
+    }
+
+    @Test
+    void connectionRepostsLostEchoWhenEnabledTest() throws Exception {
+        try (FakeBoshServer server = new FakeBoshServer(0);
+             Connection connection = new Connection("reax@example.com", "secret", Region.RUSSIA,
+                     new ClientExchange(server.newClient(server.newConnectionManager())))) {
+            connection.deliveries = new DeliveryTracker(50, 3, 10, true);
+            new ChatImpl(connection).connect();
+            connection.bindChat("trade");
+            server.loseEchoes(1);
+
+            CompletableFuture<Delivery> groupchat = connection.send(TRADE);
+            CompletableFuture<Delivery> whisper = connection.send(WHISPER);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!(groupchat.isDone() && whisper.isDone()) && System.nanoTime() < deadline) {
+                connection.chatLoop();
+            }
+
+            assertEquals(2, groupchat.get().getAttempts());
+            assertEquals(1, whisper.get().getAttempts());
+            assertEquals(3, server.getSentMessages());
+            assertEquals(Arrays.asList("wts granite", "a &lt; b &amp; c", "wts granite"), server.getSentTexts());
+            DeliveryTracker tracker = connection.getDeliveryTracker();
+            assertEquals(2, tracker.getDelivered());
+            assertEquals(1, tracker.getRetries());
+            assertEquals(0, tracker.getPending());
+        }
+    }
+}
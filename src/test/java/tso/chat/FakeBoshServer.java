@@ -0,0 +1,296 @@
+package tso.chat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plays the web site, game servers and BOSH chat server of the russian region on a local port.
+ * <p>
+ * Clients from {@link #newClient(PoolingHttpClientConnectionManager)} resolve every host to the server and talk
+ * plain HTTP even to https URLs, so a {@link Connection} runs its real HTTP path against it.
+ * Only realm 3 knows the player. Every chat poll gets a message, from trade unless other rooms are set; if enabled,
+ * every n-th poll fails with HTTP 500 to exercise the error path. Groupchat messages are echoed back with their id like a MUC room does,
+ * except the first ones which are set to be lost. A message request repeating a rid is answered from a cache without
+ * being processed again, like a BOSH connection manager does.
+ */
+class FakeBoshServer implements AutoCloseable {
+    static final String EMPTY = "<body xmlns=\"http://jabber.org/protocol/httpbind\"></body>";
+    private static final Pattern ROOM = Pattern.compile("<presence to=\"([^@\"]+)@conference");
+    private static final Pattern GROUPCHAT = Pattern.compile("<message to=\"([^@\"]+)@conference[^>]* id=\"([^\"]+)\"");
+    private static final Pattern RID = Pattern.compile("rid=\"(\\d+)\"");
+    private static final Pattern SID = Pattern.compile("sid=\"([^\"]+)\"");
+
+    static {
+        // without it every response waits for the delayed acknowledgement of its headers
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final int failEvery;
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicInteger lostEchoes = new AtomicInteger();
+    private final AtomicInteger sentMessages = new AtomicInteger();
+    private final AtomicInteger droppedResponses = new AtomicInteger();
+    private final AtomicInteger replays = new AtomicInteger();
+    // responses to message requests by sid and rid
+    private final Map<String, String> answered = new ConcurrentHashMap<>();
+    private volatile String extraRoom;
+    private volatile boolean presencesFirst;
+    // history held back for the request after the join
+    private final AtomicReference<String> deferredHistory = new AtomicReference<>();
+    private volatile String[] pollRooms = {"trade"};
+    private final AtomicInteger answeredPolls = new AtomicInteger();
+    private final List<String> sentTexts = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param failEvery  every n-th chat poll fails, 0 never
+     */
+    FakeBoshServer(int failEvery) throws IOException {
+        this.failEvery = failEvery;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the escaped body of every message stanza processed, i.e. shown to the room or the addressee
+     */
+    List<String> getSentTexts() {
+        return sentTexts;
+    }
+
+    /**
+     * @return message stanzas processed, repeated rids not included
+     */
+    int getSentMessages() {
+        return sentMessages.get();
+    }
+
+    /**
+     * @return message requests which repeated a rid and were answered from the cache
+     */
+    int getReplays() {
+        return replays.get();
+    }
+
+    /**
+     * @param rooms  the rooms chat polls get their messages from, one after another
+     */
+    void setPollRooms(String... rooms) {
+        answeredPolls.set(0);
+        pollRooms = rooms;
+    }
+
+    /**
+     * @param room  a room which also sends a message of history whenever rooms are bound, null for none
+     */
+    void setExtraRoom(String room) {
+        extraRoom = room;
+    }
+
+    /**
+     * @param presencesFirst  answers a join with the occupant presences only, the history comes with the next request
+     */
+    void setPresencesFirst(boolean presencesFirst) {
+        this.presencesFirst = presencesFirst;
+    }
+
+    /**
+     * @param count  how many of the next groupchat messages are not echoed
+     */
+    void loseEchoes(int count) {
+        lostEchoes.set(count);
+    }
+
+    /**
+     * @param count  how many of the next message requests are processed, but their connection breaks before
+     * the response is complete
+     */
+    void dropResponses(int count) {
+        droppedResponses.set(count);
+    }
+
+    CloseableHttpClient newClient(PoolingHttpClientConnectionManager manager) {
+        return HttpClients.custom()
+                .setConnectionManager(manager)
+                .disableContentCompression()
+                .build();
+    }
+
+    PoolingHttpClientConnectionManager newConnectionManager() {
+        Registry<ConnectionSocketFactory> plain = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", PlainConnectionSocketFactory.getSocketFactory())
+                .build();
+        InetAddress[] loopback = {InetAddress.getLoopbackAddress()};
+        return new PoolingHttpClientConnectionManager(plain, null, host -> getPort(), host -> loopback,
+                -1, TimeUnit.MILLISECONDS);
+    }
+
+    private void handle(HttpExchange http) throws IOException {
+        requests.incrementAndGet();
+        String host = String.valueOf(http.getRequestHeaders().getFirst("Host"));
+        String path = http.getRequestURI().getPath();
+        String body = read(http.getRequestBody());
+        if (path.endsWith("/api/user/login")) {
+            respond(http, 200, "OK");
+        } else if ("GET".equals(http.getRequestMethod())) {
+            http.getResponseHeaders().add("Set-Cookie", "dsoAuthUser=42; path=/");
+            http.getResponseHeaders().add("Set-Cookie", "dsoAuthToken=token; path=/");
+            respond(http, 200, "");
+        } else if (path.endsWith("/authenticate")) {
+            if (host.startsWith("w03bb01")) {
+                respond(http, 200, "0|Reax|hash");
+            } else {
+                respond(http, 403, "");
+            }
+        } else if (!body.contains("sid=")) {
+            respond(http, 200, "<body sid=\"s" + sessions.incrementAndGet() + "\" xmlns=\"http://jabber.org/protocol/httpbind\"/>");
+        } else if (body.contains("<message ")) {
+            String key = find(SID, body) + "/" + find(RID, body);
+            String response = answered.get(key);
+            if (response != null) {
+                replays.incrementAndGet();
+            } else {
+                response = process(body);
+                answered.put(key, response);
+            }
+            if (droppedResponses.getAndDecrement() > 0) {
+                breakResponse(http, response);
+            } else {
+                respond(http, 200, response);
+            }
+        } else if (body.contains("@conference")) {
+            StringBuilder history = new StringBuilder("<body xmlns=\"http://jabber.org/protocol/httpbind\">");
+            StringBuilder presences = new StringBuilder(history);
+            Matcher m = ROOM.matcher(body);
+            while (m.find()) {
+                presences.append("<presence from=\"").append(m.group(1))
+                        .append("@conference.w03chat01.thesettlersonline.ru/reax\"><x xmlns=\"http://jabber.org/protocol/muc#user\">")
+                        .append("<item affiliation=\"none\" role=\"participant\"/></x></presence>");
+                for (int i = 0; i < 15; i++) {
+                    history.append(message(m.group(1), "history " + i, "<delay xmlns=\"urn:xmpp:delay\" stamp=\"2017-11-03T12:00:0" + (i % 10) + "Z\"/>"));
+                }
+            }
+            String extra = extraRoom;
+            if (extra != null) {
+                history.append(message(extra, "not asked for", ""));
+            }
+            history.append("</body>");
+            if (presencesFirst) {
+                deferredHistory.set(history.toString());
+                respond(http, 200, presences.append("</body>").toString());
+            } else {
+                respond(http, 200, history.toString());
+            }
+        } else if (body.contains("<presence") || body.contains("<iq") || body.contains("xmpp:restart")) {
+            String deferred = deferredHistory.getAndSet(null);
+            respond(http, 200, deferred != null ? deferred : EMPTY);
+        } else if (failEvery > 0 && polls.incrementAndGet() % failEvery == 0) {
+            respond(http, 500, "");
+        } else {
+            String[] rooms = pollRooms;
+            String room = rooms[answeredPolls.getAndIncrement() % rooms.length];
+            respond(http, 200, "<body xmlns=\"http://jabber.org/protocol/httpbind\">"
+                    + message(room, "wts granite", "") + "</body>");
+        }
+    }
+
+    private String process(String body) {
+        sentMessages.incrementAndGet();
+        sentTexts.add(body.substring(body.indexOf("<body>") + 6, body.indexOf("</body>")));
+        Matcher m = GROUPCHAT.matcher(body);
+        if (m.find() && lostEchoes.getAndDecrement() <= 0) {
+            return "<body xmlns=\"http://jabber.org/protocol/httpbind\">"
+                    + "<message from=\"" + m.group(1) + "@conference.w03chat01.thesettlersonline.ru/Reax\" id=\""
+                    + m.group(2) + "\" type=\"groupchat\"><body>.</body>"
+                    + "<bbmsg playername=\"Reax\" playertag=\"null\" playerid=\"42\" xmlns=\"bbmsg\"/></message></body>";
+        }
+        return EMPTY;
+    }
+
+    private static String find(Pattern pattern, String body) {
+        Matcher m = pattern.matcher(body);
+        return m.find() ? m.group(1) : "";
+    }
+
+    private static String message(String room, String text, String delay) {
+        return "<message from=\"" + room + "@conference.w03chat01.thesettlersonline.ru/reax\" type=\"groupchat\">" +
+                "<body>" + text + "</body>" + delay +
+                "<bbmsg playername=\"Reax\" playertag=\"ABC\" playerid=\"42\" xmlns=\"bbmsg\"/></message>";
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange http, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0) {
+            http.sendResponseHeaders(status, -1);
+            http.close();
+            return;
+        }
+        http.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = http.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Announces the whole response but closes the connection halfway through it.
+     */
+    private static void breakResponse(HttpExchange http, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        http.sendResponseHeaders(200, bytes.length);
+        OutputStream out = http.getResponseBody();
+        out.write(bytes, 0, bytes.length / 2);
+        out.flush();
+        http.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
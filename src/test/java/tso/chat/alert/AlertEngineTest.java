@@ -0,0 +1,112 @@
+package tso.chat.alert;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import tso.chat.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+class AlertEngineTest {
+
+    private static ChatMessage message(String channel, String sender, String text) {
+        return new ChatMessage(channel, "", sender, "42", LocalDateTime.of(2017, 11, 3, 12, 0), text);
+    }
+
+    private static List<String> fired(AlertEngine engine, ChatMessage message) {
+        return engine.evaluate(message).stream().map(alert -> alert.getRule().getId()).collect(Collectors.toList());
+    }
+
+    @Test
+    void keywordsMatchWholeWordsIgnoringCaseTest() {
+        AlertEngine engine = new AlertEngine(Arrays.asList(
+                AlertRule.keywords("ore", AlertRule.Field.TEXT, Arrays.asList("ore", "руда")),
+                AlertRule.keywords("granite", AlertRule.Field.TEXT, Collections.singletonList("granite")),
+                AlertRule.keywords("reax", AlertRule.Field.SENDER_NAME, Collections.singletonList("reax"))));
+
+        assertEquals(Arrays.asList("granite"), fired(engine, message("trade", "Bob", "WTS Granite and more")));
+        assertEquals(Arrays.asList("ore", "reax"), fired(engine, message("global-1", "Reax", "продам РУДА, ore, руда")));
+        assertTrue(fired(engine, message("trade", "Reaxx", "granites")).isEmpty());
+
+        Alert alert = engine.evaluate(message("gc_1", "Bob", "need ore")).get(0);
+        assertEquals("gc_1", alert.getChannel());
+        assertEquals("Bob", alert.getSenderName());
+        assertEquals(5, alert.getStart());
+    }
+
+    @Test
+    void overlappingKeywordsOfManyRulesTest() {
+        List<AlertRule> rules = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rules.add(AlertRule.keywords("item" + i, AlertRule.Field.TEXT, Collections.singletonList("item" + i)));
+        }
+        rules.add(AlertRule.keywords("he", AlertRule.Field.TEXT, Arrays.asList("he", "she", "hers")));
+        AlertEngine engine = new AlertEngine(rules);
+
+        assertEquals(Arrays.asList("item7", "item123"), fired(engine, message("trade", "Bob", "item7 item12x item123")));
+        assertEquals(Arrays.asList("he"), fired(engine, message("trade", "Bob", "ushers hers")));
+    }
+
+    @Test
+    void regexRulesAreGatedByTheirLiteralTest() {
+        AlertEngine engine = new AlertEngine(Arrays.asList(
+                AlertRule.regex("price", AlertRule.Field.TEXT, Pattern.compile("granite\\s+for\\s+(\\d+)")),
+                AlertRule.regex("any", AlertRule.Field.TEXT, Pattern.compile("\\d{4,}"))));
+
+        assertEquals(Arrays.asList("price"), fired(engine, message("trade", "Bob", "GRANITE for 120? granite for 130")));
+        List<Alert> alerts = engine.evaluate(message("trade", "Bob", "granite for 120 or 5000 gold"));
+        assertEquals("granite for 120", alerts.get(0).getMatched());
+        assertEquals("5000", alerts.get(1).getMatched());
+    }
+
+    @Test
+    void requiredLiteralTest() {
+        assertEquals("granite", AlertRule.requiredLiteral(Pattern.compile("granite\\s+for\\s+(\\d+)")));
+        assertEquals("marble", AlertRule.requiredLiteral(Pattern.compile("(?i)wts\\s*marble(s)?")));
+        assertEquals("wtb ", AlertRule.requiredLiteral(Pattern.compile("wtb [a-z]+ for")));
+        assertEquals("sell", AlertRule.requiredLiteral(Pattern.compile("sells?")));
+        assertEquals("a.b", AlertRule.requiredLiteral(Pattern.compile("a\\.b\\d")));
+        assertNull(AlertRule.requiredLiteral(Pattern.compile("wts|wtb")));
+        assertNull(AlertRule.requiredLiteral(Pattern.compile("(granite)+")));
+        assertEquals("wts", AlertRule.requiredLiteral(Pattern.compile("\\pLwts\\p{Lu}")));
+        assertNull(AlertRule.requiredLiteral(Pattern.compile("\\x41BCD")));
+        assertNull(AlertRule.requiredLiteral(Pattern.compile("granite # any", Pattern.COMMENTS)));
+        assertEquals("xyz", AlertRule.requiredLiteral(Pattern.compile("[a[bc]]xyz")));
+        assertEquals("abc", AlertRule.requiredLiteral(Pattern.compile("[^]]abc")));
+    }
+
+    @Test
+    void escapesAndCommentsMatchLikeThePatternTest() {
+        String[][] cases = {
+                {"\\x41BCD", "ABCD"},
+                {"\\u00e9 au lait", "\u00e9 au lait"},
+                {"(?<w>wts) \\k<w>", "wts wts"},
+                {"\\0101BCD", "ABCD"},
+                {"\\cAbcd", "\u0001bcd"},
+                {"(?x) gra nite # comment", "granite"},
+                {"gra(?x: nite )", "granite"},
+                {"[a[bc]]xyz", "cxyz"},
+                {"[^]]abc", "xabc"},
+                {"[]x]yz12", "]yz12"},
+                {"[a-z&&[^e]]wts", "fwts"},
+        };
+        for (String[] c : cases) {
+            Pattern pattern = Pattern.compile(c[0]);
+            AlertEngine engine = new AlertEngine(Collections.singletonList(AlertRule.regex("rule", AlertRule.Field.TEXT, pattern)));
+            assertTrue(pattern.matcher(c[1]).find(), c[0]);
+            assertEquals(Arrays.asList("rule"), fired(engine, message("trade", "Bob", c[1])), c[0]);
+        }
+        Pattern comments = Pattern.compile("gra nite # wts", Pattern.COMMENTS);
+        AlertEngine engine = new AlertEngine(Collections.singletonList(AlertRule.regex("rule", AlertRule.Field.TEXT, comments)));
+        assertTrue(comments.matcher("granite").find());
+        assertEquals(Arrays.asList("rule"), fired(engine, message("trade", "Bob", "granite")));
+    }
+}
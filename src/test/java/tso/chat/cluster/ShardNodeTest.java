@@ -0,0 +1,176 @@
+package tso.chat.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tso.chat.ChatMessage;
+import tso.chat.Connection;
+import tso.chat.Region;
+import tso.chat.SessionState;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ShardNodeTest {
+
+    private static final int ACCOUNTS = 20;
+
+    private final AtomicInteger logins = new AtomicInteger();
+    private final AtomicInteger imports = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger closedConnections = new AtomicInteger();
+    // sessions exported while their chat loop was still running
+    private final AtomicInteger exportedWhilePolling = new AtomicInteger();
+    private ExecutorService executor;
+    private List<ShardAccount> accounts;
+
+    // a connection which never touches the network
+    private class FakeConnection extends Connection {
+        private final LinkedBlockingQueue<ChatMessage> incoming = new LinkedBlockingQueue<>();
+        private volatile boolean polling;
+
+        FakeConnection(ShardAccount account) {
+            super(account.getEmail(), account.getPassword(), account.getRegion());
+            connections.incrementAndGet();
+        }
+
+        @Override
+        public void login() {
+            logins.incrementAndGet();
+        }
+
+        @Override
+        public void checkIn() {
+        }
+
+        @Override
+        public String receiveAuthHash() {
+            return "player";
+        }
+
+        @Override
+        public void bindAll() {
+        }
+
+        @Override
+        public void importSession(SessionState state) {
+            imports.incrementAndGet();
+            super.importSession(state);
+        }
+
+        @Override
+        public SessionState exportSession() {
+            if (polling) {
+                exportedWhilePolling.incrementAndGet();
+            }
+            return super.exportSession();
+        }
+
+        @Override
+        public ChatMessage chatLoop() {
+            polling = true;
+            try {
+                return incoming.take();
+            } catch (InterruptedException e) {
+                // a real loop takes a moment to notice the abort
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ignored) {
+                }
+                return null;
+            } finally {
+                polling = false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closedConnections.incrementAndGet();
+            super.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+        accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(new ShardAccount("player" + i + "@example.com", "secret", Region.RUSSIA));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private ShardNode node(String id, LoopbackTransport transport) {
+        return new ShardNode(id, accounts, Collections.emptyList(), transport, executor, FakeConnection::new);
+    }
+
+    private void await(AtomicInteger counter, int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && counter.get() != expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, counter.get());
+    }
+
+    @Test
+    void sessionsAreHandedOffWithoutNewLoginsTest() throws InterruptedException {
+        LoopbackTransport transport = new LoopbackTransport();
+        ShardNode a = node("a", transport);
+        ShardNode b = node("b", transport);
+
+        a.start();
+        assertEquals(ACCOUNTS, a.getLocalAccounts().size());
+        await(logins, ACCOUNTS);
+
+        b.start();
+        Set<String> both = new HashSet<>(a.getLocalAccounts());
+        both.addAll(b.getLocalAccounts());
+        assertEquals(ACCOUNTS, both.size());
+        assertEquals(ACCOUNTS, a.getLocalAccounts().size() + b.getLocalAccounts().size());
+        assertFalse(b.getLocalAccounts().isEmpty());
+        await(imports, b.getLocalAccounts().size());
+
+        int moved = b.getLocalAccounts().size();
+        b.close();
+        assertEquals(ACCOUNTS, a.getLocalAccounts().size());
+        assertTrue(b.getLocalAccounts().isEmpty());
+        await(imports, 2 * moved);
+        assertEquals(ACCOUNTS, logins.get());
+        assertEquals(0, exportedWhilePolling.get());
+    }
+
+    @Test
+    void nodesClosingTogetherHandOffWithoutDeadlockTest() throws Exception {
+        LoopbackTransport transport = new LoopbackTransport();
+        ShardNode a = node("a", transport);
+        ShardNode b = node("b", transport);
+        a.start();
+        b.start();
+        await(logins, ACCOUNTS);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            CompletableFuture<Void> closeA = CompletableFuture.runAsync(a::close);
+            CompletableFuture<Void> closeB = CompletableFuture.runAsync(b::close);
+            closeA.join();
+            closeB.join();
+        });
+        assertEquals(0, exportedWhilePolling.get());
+        // hand-offs to a node which closed meanwhile are dropped, their connections closed all the same
+        await(closedConnections, connections.get());
+    }
+
+}
@@ -0,0 +1,101 @@
+package tso.chat.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import tso.chat.ChatMessage;
+import tso.chat.Message;
+import tso.chat.StatusChangeMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class MessageCodecTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2017, 11, 3, 12, 30, 15, 123_000_000);
+
+    private static void assertSame(ChatMessage expected, Message actual) {
+        ChatMessage message = (ChatMessage) actual;
+        assertEquals(expected.getChannel(), message.getChannel());
+        assertEquals(expected.getSenderGuild(), message.getSenderGuild());
+        assertEquals(expected.getSenderName(), message.getSenderName());
+        assertEquals(expected.getSenderId(), message.getSenderId());
+        assertEquals(expected.getDateTime(), message.getDateTime());
+        assertEquals(expected.getText(), message.getText());
+    }
+
+    @Test
+    void roundTripTest() throws IOException {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            messages.add(new ChatMessage(i % 2 == 0 ? "trade" : "global-1", i % 3 == 0 ? null : "ABC",
+                    "игрок" + (i % 7), String.valueOf(i % 7), TIME.plusSeconds(i * 3 - 100), i == 5 ? null : "text " + i));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MessageEncoder encoder = new MessageEncoder(Channels.newChannel(out))) {
+            for (ChatMessage message : messages) {
+                encoder.write(message);
+            }
+            encoder.write(new StatusChangeMessage());
+        }
+
+        MessageDecoder decoder = new MessageDecoder(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+        for (ChatMessage message : messages) {
+            assertSame(message, decoder.read());
+        }
+        assertTrue(decoder.read() instanceof StatusChangeMessage);
+        assertNull(decoder.read());
+    }
+
+    @Test
+    void largeTextTest() throws IOException {
+        char[] text = new char[200_000];
+        Arrays.fill(text, 'ж');
+        ChatMessage message = new ChatMessage("help", "", "Reax", "1", TIME, new String(text));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MessageEncoder encoder = new MessageEncoder(Channels.newChannel(out))) {
+            encoder.write(message);
+        }
+        MessageDecoder decoder = new MessageDecoder(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+        assertSame(message, decoder.read());
+    }
+
+    @Test
+    void truncatedStreamTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MessageEncoder encoder = new MessageEncoder(Channels.newChannel(out))) {
+            encoder.write(new ChatMessage("help", "", "Reax", "1", TIME, "some text"));
+        }
+        byte[] bytes = Arrays.copyOf(out.toByteArray(), out.size() - 3);
+        MessageDecoder decoder = new MessageDecoder(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        assertThrows(IOException.class, decoder::read);
+    }
+
+    @Test
+    void fileExportTest() throws IOException {
+        Path file = Files.createTempFile("messages", ".bin");
+        try {
+            List<ChatMessage> messages = Arrays.asList(
+                    new ChatMessage("trade", "ABC", "Reax", "1", TIME, "wts granite"),
+                    new ChatMessage("trade", "ABC", "Reax", "1", TIME.plusMinutes(1), "wts marble"));
+            assertEquals(2, MessageFiles.export(file, messages));
+            List<Message> read = MessageFiles.readAll(file);
+            assertEquals(2, read.size());
+            assertSame(messages.get(1), read.get(1));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
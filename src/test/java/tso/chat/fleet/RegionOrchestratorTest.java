@@ -0,0 +1,183 @@
+package tso.chat.fleet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import tso.chat.AsyncChat;
+import tso.chat.Connection;
+import tso.chat.HttpExchange;
+import tso.chat.Region;
+import tso.chat.exceptions.UplayDownException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class RegionOrchestratorTest {
+
+    private final AtomicInteger logins = new AtomicInteger();
+    private volatile boolean uplayDown;
+    private RegionOrchestrator orchestrator;
+
+    // a connection which never touches the network
+    private class FakeConnection extends Connection {
+
+        FakeConnection(String email, String password, Region region, HttpExchange exchange) {
+            super(email, password, region, exchange);
+        }
+
+        @Override
+        public void login() throws UplayDownException {
+            logins.incrementAndGet();
+            if (uplayDown) {
+                throw new UplayDownException();
+            }
+        }
+
+        @Override
+        public void checkIn() {
+        }
+
+        @Override
+        public String receiveAuthHash() {
+            return "player";
+        }
+
+        @Override
+        public void bindAll() {
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (orchestrator != null) {
+            orchestrator.close();
+        }
+    }
+
+    @Test
+    void downRegionDoesNotStarveOthersTest() throws Exception {
+        Map<Region, RegionBudget> budgets = new EnumMap<>(Region.class);
+        budgets.put(Region.RUSSIA, new RegionBudget(1, 4, 600, 10));
+        orchestrator = new RegionOrchestrator(budgets, 0, FakeConnection::new);
+
+        uplayDown = true;
+        CompletableFuture<AsyncChat> first = orchestrator.connect("a@example.com", "secret", Region.RUSSIA);
+        ExecutionException error = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof UplayDownException);
+        assertEquals(RegionHealth.State.DOWN, orchestrator.getHealth(Region.RUSSIA).getState());
+
+        // waits for the cooldown instead of hammering the region
+        uplayDown = false;
+        CompletableFuture<AsyncChat> second = orchestrator.connect("b@example.com", "secret", Region.RUSSIA);
+        // the only thread of the region is busy as well
+        CountDownLatch release = new CountDownLatch(1);
+        orchestrator.submit(Region.RUSSIA, () -> release.await(5, TimeUnit.SECONDS));
+
+        assertEquals("europe", orchestrator.submit(Region.EUROPE, () -> "europe").get(5, TimeUnit.SECONDS));
+        assertEquals(RegionHealth.State.UP, orchestrator.getHealth(Region.EUROPE).getState());
+        assertFalse(second.isDone());
+        assertEquals(1, logins.get());
+        release.countDown();
+
+        orchestrator.close();
+        assertTrue(second.isCompletedExceptionally());
+    }
+
+    @Test
+    void loginsAreRateLimitedPerRegionTest() throws Exception {
+        // time stands still, so the third login of one per minute never becomes due
+        orchestrator = new RegionOrchestrator(Collections.singletonMap(Region.RUSSIA, new RegionBudget(4, 4, 1, 2)),
+                0, FakeConnection::new, () -> 0L);
+
+        CompletableFuture<?>[] sessions = new CompletableFuture<?>[3];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = orchestrator.connect("player" + i + "@example.com", "secret", Region.RUSSIA);
+        }
+        sessions[0].get(5, TimeUnit.SECONDS);
+        sessions[1].get(5, TimeUnit.SECONDS);
+        assertFalse(sessions[2].isDone());
+        assertEquals(2, orchestrator.getHealth(Region.RUSSIA).getLogins());
+        assertEquals(0, orchestrator.getLeasedConnections(Region.RUSSIA));
+    }
+
+    @Test
+    void limiterSpacesLoginsAfterBurstTest() {
+        AtomicLong now = new AtomicLong();
+        LoginRateLimiter limiter = new LoginRateLimiter(120, 2, now::get);
+
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertEquals(501, limiter.reserve());
+        assertEquals(1001, limiter.reserve());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        // a quiet period lets a burst through again
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        assertEquals(501, limiter.reserve());
+    }
+
+    @Test
+    void loginsDoNotWaitForSessionCallsTest() throws Exception {
+        orchestrator = new RegionOrchestrator(Collections.singletonMap(Region.RUSSIA, new RegionBudget(1, 4, 600, 2)),
+                0, FakeConnection::new);
+        // a chat loop holds the only thread for session calls
+        CountDownLatch release = new CountDownLatch(1);
+        orchestrator.submit(Region.RUSSIA, () -> release.await(5, TimeUnit.SECONDS));
+
+        orchestrator.connect("a@example.com", "secret", Region.RUSSIA).get(5, TimeUnit.SECONDS);
+        release.countDown();
+    }
+
+    @Test
+    void loginFinishingAfterCloseClosesItsConnectionTest() throws Exception {
+        CountDownLatch loggingIn = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger closes = new AtomicInteger();
+        orchestrator = new RegionOrchestrator(Collections.emptyMap(), 0,
+                (email, password, region, exchange) -> new FakeConnection(email, password, region, exchange) {
+                    @Override
+                    public void login() throws UplayDownException {
+                        loggingIn.countDown();
+                        // ignores interrupts like a blocking HTTP call
+                        while (release.getCount() > 0) {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                // keep waiting
+                            }
+                        }
+                        super.login();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        closes.incrementAndGet();
+                        super.close();
+                    }
+                });
+
+        CompletableFuture<AsyncChat> session = orchestrator.connect("a@example.com", "secret", Region.RUSSIA);
+        assertTrue(loggingIn.await(5, TimeUnit.SECONDS));
+        orchestrator.close();
+        release.countDown();
+
+        assertThrows(ExecutionException.class, () -> session.get(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (closes.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, closes.get());
+    }
+}
@@ -0,0 +1,121 @@
+package tso.chat.fleet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import tso.chat.ChatMessage;
+import tso.chat.Connection;
+import tso.chat.Region;
+import tso.chat.SessionHealth;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+class SharedChannelDeduplicatorTest {
+
+    // health whose state the test sets, the real one only changes in the chat loop
+    private static class FakeHealth extends SessionHealth {
+        private final List<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+        private volatile State state = State.CONNECTED;
+
+        @Override
+        public State getState() {
+            return state;
+        }
+
+        @Override
+        public void addStateListener(Consumer<State> listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeStateListener(Consumer<State> listener) {
+            listeners.remove(listener);
+        }
+
+        void set(State state) {
+            this.state = state;
+            listeners.forEach(listener -> listener.accept(state));
+        }
+    }
+
+    // a connection which never touches the network, logged in on realm 3
+    private static class FakeConnection extends Connection {
+        private final FakeHealth health = new FakeHealth();
+
+        FakeConnection(String email) {
+            super(email, "secret", Region.RUSSIA);
+        }
+
+        @Override
+        public String getRealm() {
+            return "3";
+        }
+
+        @Override
+        public SessionHealth getHealth() {
+            return health;
+        }
+    }
+
+    private static ChatMessage message(String channel, String text) {
+        return new ChatMessage(channel, "", "Reax", "42", LocalDateTime.now(), text);
+    }
+
+    @Test
+    void copiesOfPublicMessagesAreDroppedTest() {
+        SharedChannelDeduplicator deduplicator = new SharedChannelDeduplicator(10_000, 0);
+        assertTrue(deduplicator.isFirstCopy("EUROPE/1", message("trade", "wts granite")));
+        assertFalse(deduplicator.isFirstCopy("EUROPE/1", message("trade", "wts granite")));
+        assertTrue(deduplicator.isFirstCopy("EUROPE/2", message("trade", "wts granite")));
+        assertTrue(deduplicator.isFirstCopy("EUROPE/1", message("global-1", "wts granite")));
+        assertEquals(1, deduplicator.getDuplicates());
+    }
+
+    @Test
+    void privateAndGuildMessagesAreNeverDroppedTest() {
+        SharedChannelDeduplicator deduplicator = new SharedChannelDeduplicator(10_000, 0);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(deduplicator.isFirstCopy("EUROPE/1", message("private", "hi")));
+            assertTrue(deduplicator.isFirstCopy("EUROPE/1", message("gc_123", "hi")));
+        }
+    }
+
+
+    @Test
+    void failingDecoderIsReplacedTest() {
+        SharedChannelDeduplicator deduplicator = new SharedChannelDeduplicator(10_000, 1);
+        FakeConnection first = new FakeConnection("a@example.com");
+        FakeConnection second = new FakeConnection("b@example.com");
+        FakeConnection third = new FakeConnection("c@example.com");
+        for (Connection connection : Arrays.asList(first, second, third)) {
+            deduplicator.attach(connection);
+        }
+        String realm = Region.RUSSIA + "/3";
+        assertEquals(Arrays.asList(first), deduplicator.getDecoders(realm));
+        assertFalse(second.getRoomFilter().test("trade"));
+        assertTrue(second.getRoomFilter().test("gc_123"));
+
+        first.health.set(SessionHealth.State.RESUMING);
+        assertEquals(Arrays.asList(second), deduplicator.getDecoders(realm));
+        second.health.set(SessionHealth.State.BACKING_OFF);
+        assertEquals(Arrays.asList(third), deduplicator.getDecoders(realm));
+
+        // nobody is connected, the first one decodes again as soon as it is back
+        third.health.set(SessionHealth.State.BACKING_OFF);
+        assertEquals(1, deduplicator.getDecoders(realm).size());
+        first.health.set(SessionHealth.State.CONNECTED);
+        assertEquals(Arrays.asList(first), deduplicator.getDecoders(realm));
+
+        deduplicator.detach(first);
+        second.health.set(SessionHealth.State.CONNECTED);
+        assertEquals(Arrays.asList(second), deduplicator.getDecoders(realm));
+        first.health.set(SessionHealth.State.RESUMING);
+        assertEquals(Arrays.asList(second), deduplicator.getDecoders(realm));
+    }
+}
@@ -0,0 +1,100 @@
+package tso.chat.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import tso.chat.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+class MessageRingTest {
+
+    private static ChatMessage message(long i) {
+        return new ChatMessage("trade", "ABC", "player" + i % 7, String.valueOf(i % 7),
+                LocalDateTime.of(2017, 11, 3, 12, 0).plusSeconds(i), "text " + i);
+    }
+
+    @Test
+    void keepsTheNewestMessagesTest() {
+        MessageRing ring = new MessageRing(4096);
+        for (int i = 1; i <= 500; i++) {
+            assertEquals(i, ring.append(message(i)));
+        }
+        List<ChatMessage> recent = ring.recent(10);
+        assertEquals(10, recent.size());
+        for (int i = 0; i < 10; i++) {
+            ChatMessage message = recent.get(i);
+            assertEquals("text " + (491 + i), message.getText());
+            assertEquals(message(491 + i).getDateTime(), message.getDateTime());
+            assertEquals("ABC", message.getSenderGuild());
+        }
+        // 4 KiB hold far fewer than 500 messages
+        int retained = ring.latest(Integer.MAX_VALUE).size();
+        assertTrue(retained > 10 && retained < 100, String.valueOf(retained));
+        assertEquals(500, ring.getLastSequence());
+
+        List<MessageView> missed = ring.since(497, 100);
+        assertEquals(3, missed.size());
+        assertEquals(498, missed.get(0).getSequence());
+        assertEquals(retained, ring.since(0, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void overwrittenViewsAreInvalidTest() {
+        MessageRing ring = new MessageRing(2048);
+        ring.append(message(1));
+        MessageView view = ring.latest(1).get(0);
+        assertEquals("text 1", view.decode().getText());
+        assertTrue(view.payload().isDirect());
+
+        for (int i = 2; i < 200; i++) {
+            ring.append(message(i));
+        }
+        assertFalse(view.isValid());
+        assertNull(view.decode());
+    }
+
+    @Test
+    void readersNeverSeeTornRecordsTest() throws InterruptedException {
+        MessageRing ring = new MessageRing(8192);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> error = new AtomicReference<>();
+        AtomicLong decoded = new AtomicLong();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            Thread reader = new Thread(() -> {
+                while (!done.get()) {
+                    for (MessageView view : ring.latest(20)) {
+                        ChatMessage message = view.decode();
+                        if (message == null) {
+                            continue;
+                        }
+                        decoded.incrementAndGet();
+                        if (!message.getText().equals("text " + view.getSequence())) {
+                            error.set(view.getSequence() + " decoded as " + message.getText());
+                        }
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (int i = 1; i <= 200_000; i++) {
+            ring.append(message(i));
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(error.get());
+        assertTrue(decoded.get() > 0);
+    }
+}
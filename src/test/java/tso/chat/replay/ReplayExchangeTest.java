@@ -0,0 +1,91 @@
+package tso.chat.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHeader;
+import org.junit.jupiter.api.Test;
+import tso.chat.*;
+
+import java.io.EOFException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class ReplayExchangeTest {
+
+    private static final String EMPTY = "<body xmlns=\"http://jabber.org/protocol/httpbind\"></body>";
+    private static final String MESSAGE = "<body xmlns=\"http://jabber.org/protocol/httpbind\">" +
+            "<message from=\"trade@conference.w03chat01.thesettlersonline.ru/reax\" type=\"groupchat\">" +
+            "<body>wts granite</body><bbmsg playername=\"Reax\" playertag=\"ABC\" playerid=\"42\" xmlns=\"bbmsg\"/>" +
+            "</message></body>";
+
+    // plays the servers of the russian region, only realm 3 knows the player
+    private static class FakeServers implements HttpExchange {
+        private int binds;
+
+        @Override
+        public HttpResult execute(HttpUriRequest request) {
+            String uri = request.getURI().toString();
+            Header[] none = new Header[0];
+            if (uri.contains("/api/user/login")) {
+                return new HttpResult(200, "OK", none);
+            }
+            if ("GET".equals(request.getMethod())) {
+                return new HttpResult(200, "", new Header[]{
+                        new BasicHeader("Set-Cookie", "dsoAuthUser=42; path=/"),
+                        new BasicHeader("Set-Cookie", "dsoAuthToken=token; path=/")});
+            }
+            if (uri.endsWith("/authenticate")) {
+                return uri.contains("w03bb01") ? new HttpResult(200, "0|Reax|hash", none) : new HttpResult(403, "", none);
+            }
+            switch (binds++) {
+                case 0:
+                    return new HttpResult(200, "<body sid=\"session\" xmlns=\"http://jabber.org/protocol/httpbind\"/>", none);
+                case 1:
+                case 2:
+                case 3:
+                case 4:
+                    return new HttpResult(200, EMPTY, none);
+                default:
+                    return new HttpResult(200, MESSAGE, none);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static ChatMessage firstMessage(HttpExchange exchange) throws Exception {
+        Connection connection = new Connection("reax@example.com", "secret", Region.RUSSIA, exchange);
+        assertEquals("Reax", new ChatImpl(connection).connect());
+        return connection.chatLoop();
+    }
+
+    @Test
+    void recordedSessionIsReplayedOfflineTest() throws Exception {
+        Path file = Files.createTempFile("traffic", ".rec");
+        try {
+            try (RecordingExchange recording = new RecordingExchange(new FakeServers(), file)) {
+                assertEquals("wts granite", firstMessage(recording).getText());
+            }
+            try (ReplayExchange replay = new ReplayExchange(file, false)) {
+                ChatMessage message = firstMessage(replay);
+                assertEquals("trade", message.getChannel());
+                assertEquals("Reax", message.getSenderName());
+                assertEquals("wts granite", message.getText());
+                assertEquals(11, replay.getReplayed());
+                // the recording ends after the first chat message
+                assertThrows(EOFException.class, () -> replay.execute(new HttpGet("http://example.com")));
+                assertTrue(replay.isFinished());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package tso.chat.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import tso.chat.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+class MessageIndexTest {
+
+    private static ChatMessage message(String channel, String guild, String name, String text) {
+        return new ChatMessage(channel, guild, name, "1", LocalDateTime.now(), text);
+    }
+
+    @Test
+    void tokenizeTest() {
+        assertEquals(Arrays.asList("продам", "granite", "x500"), MessageIndex.tokenize("Продам granite, x500!"));
+    }
+
+    @Test
+    void searchTermNewestFirstTest() {
+        MessageIndex index = new MessageIndex(2, 10);
+        index.add(message("trade", "ABC", "Reax", "selling marble"));
+        index.add(message("global-1", "", "Bob", "hello"));
+        index.add(message("trade", "ABC", "Alice", "buying Marble x100"));
+
+        List<ChatMessage> found = index.search(SearchField.TEXT, "marble", 10);
+        assertEquals(2, found.size());
+        assertEquals("Alice", found.get(0).getSenderName());
+        assertEquals("Reax", found.get(1).getSenderName());
+        assertEquals(1, index.search(SearchField.SENDER_NAME, "reax", 10).size());
+        assertEquals(2, index.search(SearchField.CHANNEL, "trade", 10).size());
+        assertEquals(1, index.search(SearchField.SENDER_GUILD, "abc", 1).size());
+    }
+
+    @Test
+    void searchPrefixTest() {
+        MessageIndex index = new MessageIndex(10, 10);
+        index.add(message("trade", "", "Reax", "marble and marblecolumns"));
+        index.add(message("trade", "", "Bob", "market"));
+        index.add(message("trade", "", "Eve", "granite"));
+        assertEquals(2, index.searchPrefix(SearchField.TEXT, "mar", 10).size());
+    }
+
+    @Test
+    void oldSegmentsAreEvictedTest() {
+        MessageIndex index = new MessageIndex(2, 2);
+        for (int i = 0; i < 7; i++) {
+            index.add(message("trade", "", "player" + i, "text"));
+        }
+        assertEquals(3, index.size());
+        assertEquals(0, index.search(SearchField.SENDER_NAME, "player0", 10).size());
+        assertEquals(1, index.search(SearchField.SENDER_NAME, "player6", 10).size());
+    }
+
+}
@@ -0,0 +1,184 @@
+package tso.chat.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import tso.chat.ChatMessage;
+import tso.chat.Connection;
+import tso.chat.Region;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class ChatMessagePublisherTest {
+
+    private static final Object COMPLETE = "complete";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    // a connection which never touches the network, the chat loop returns what the test feeds it
+    private static class FakeConnection extends Connection {
+        private final BlockingQueue<Object> incoming = new LinkedBlockingQueue<>();
+
+        FakeConnection() {
+            super("reax@example.com", "secret", Region.RUSSIA);
+        }
+
+        @Override
+        public ChatMessage chatLoop() {
+            try {
+                Object next = incoming.take();
+                if (next instanceof RuntimeException) {
+                    throw (RuntimeException) next;
+                }
+                return (ChatMessage) next;
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+    }
+
+    // records every signal, items as they are and the terminal signal as COMPLETE or the error
+    private static class RecordingSubscriber implements Subscriber<ChatMessage> {
+        private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+        private final long initialDemand;
+        private volatile Subscription subscription;
+
+        RecordingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(ChatMessage message) {
+            signals.add(message);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            signals.add(error);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add(COMPLETE);
+        }
+
+        Object next() throws InterruptedException {
+            return signals.poll(5, TimeUnit.SECONDS);
+        }
+
+        Object nothingMore() throws InterruptedException {
+            return signals.poll(100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static ChatMessage message(int i) {
+        return new ChatMessage("trade", "", "player" + i, String.valueOf(i), LocalDateTime.of(2017, 11, 3, 12, 0), "text " + i);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private ChatMessagePublisher publisher(FakeConnection connection) {
+        return new ChatMessagePublisher(connection, executor, MessageBuffers.of(OverflowStrategy.DROP_OLDEST, 100));
+    }
+
+    @Test
+    void deliversOnlyWhatWasRequestedTest() throws InterruptedException {
+        FakeConnection connection = new FakeConnection();
+        ChatMessagePublisher publisher = publisher(connection);
+        RecordingSubscriber subscriber = new RecordingSubscriber(2);
+        publisher.subscribe(subscriber);
+        for (int i = 0; i < 5; i++) {
+            connection.incoming.add(message(i));
+        }
+
+        assertEquals("text 0", ((ChatMessage) subscriber.next()).getText());
+        assertEquals("text 1", ((ChatMessage) subscriber.next()).getText());
+        assertNull(subscriber.nothingMore());
+
+        subscriber.subscription.request(3);
+        for (int i = 2; i < 5; i++) {
+            assertEquals("text " + i, ((ChatMessage) subscriber.next()).getText());
+        }
+        publisher.close();
+        assertSame(COMPLETE, subscriber.next());
+    }
+
+    @Test
+    void cancelledSubscriberGetsNothingMoreTest() throws InterruptedException {
+        FakeConnection connection = new FakeConnection();
+        ChatMessagePublisher publisher = publisher(connection);
+        RecordingSubscriber cancelled = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber other = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(cancelled);
+        publisher.subscribe(other);
+
+        connection.incoming.add(message(0));
+        assertTrue(cancelled.next() instanceof ChatMessage);
+        assertTrue(other.next() instanceof ChatMessage);
+        cancelled.subscription.cancel();
+        connection.incoming.add(message(1));
+
+        assertEquals("text 1", ((ChatMessage) other.next()).getText());
+        assertNull(cancelled.nothingMore());
+        publisher.close();
+        assertSame(COMPLETE, other.next());
+        assertNull(cancelled.nothingMore());
+    }
+
+    @Test
+    void failedChatLoopFailsCurrentAndLaterSubscribersTest() throws InterruptedException {
+        FakeConnection connection = new FakeConnection();
+        ChatMessagePublisher publisher = publisher(connection);
+        // no demand, so its messages stay buffered
+        RecordingSubscriber idle = new RecordingSubscriber(0);
+        publisher.subscribe(idle);
+        connection.incoming.add(message(0));
+        connection.incoming.add(message(1));
+        IllegalStateException error = new IllegalStateException("session lost");
+        connection.incoming.add(error);
+
+        assertSame(error, idle.next());
+        assertTrue(publisher.awaitStopped(5, TimeUnit.SECONDS));
+
+        RecordingSubscriber late = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(late);
+        assertSame(error, late.next());
+        assertNull(late.nothingMore());
+    }
+
+    @Test
+    void consumerSubscriberKeepsTheErrorTest() throws InterruptedException {
+        FakeConnection connection = new FakeConnection();
+        ChatMessagePublisher publisher = publisher(connection);
+        BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+        ConsumerSubscriber<ChatMessage> subscriber = new ConsumerSubscriber<>(message -> { }, errors::add);
+        publisher.subscribe(subscriber);
+        IllegalStateException error = new IllegalStateException("session lost");
+        connection.incoming.add(error);
+
+        assertSame(error, errors.poll(5, TimeUnit.SECONDS));
+        assertSame(error, subscriber.getError());
+    }
+}
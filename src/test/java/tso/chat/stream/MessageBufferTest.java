@@ -0,0 +1,59 @@
+package tso.chat.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import tso.chat.ChatMessage;
+
+import java.time.LocalDateTime;
+
+class MessageBufferTest {
+
+    private static ChatMessage message(int i) {
+        return new ChatMessage("trade", "", "player" + i, String.valueOf(i), LocalDateTime.of(2017, 11, 3, 12, 0, i), "text " + i);
+    }
+
+    @Test
+    void dropLatestTest() {
+        MessageBuffer buffer = MessageBuffers.of(OverflowStrategy.DROP_LATEST, 2).get();
+        for (int i = 0; i < 4; i++) {
+            buffer.offer(message(i));
+        }
+        assertEquals("text 0", buffer.poll().getText());
+        assertEquals("text 1", buffer.poll().getText());
+        assertNull(buffer.poll());
+        assertEquals(2, buffer.getDropped());
+    }
+
+    @Test
+    void dropOldestTest() {
+        MessageBuffer buffer = MessageBuffers.of(OverflowStrategy.DROP_OLDEST, 2).get();
+        for (int i = 0; i < 4; i++) {
+            buffer.offer(message(i));
+        }
+        assertEquals("text 2", buffer.poll().getText());
+        assertEquals("text 3", buffer.poll().getText());
+        assertEquals(2, buffer.getDropped());
+    }
+
+    @Test
+    void spillToDiskKeepsOrderTest() {
+        try (MessageBuffer buffer = MessageBuffers.of(OverflowStrategy.SPILL_TO_DISK, 2).get()) {
+            for (int i = 0; i < 5; i++) {
+                buffer.offer(message(i));
+            }
+            assertEquals("text 0", buffer.poll().getText());
+            buffer.offer(message(5));
+            for (int i = 1; i <= 5; i++) {
+                ChatMessage message = buffer.poll();
+                assertEquals("text " + i, message.getText());
+                assertEquals(message(i).getDateTime(), message.getDateTime());
+            }
+            assertTrue(buffer.isEmpty());
+            assertEquals(0, buffer.getDropped());
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package tso.chat.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import tso.chat.ChatMessage;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class PriorityDispatcherTest {
+
+    private static ChatMessage message(String channel, int i) {
+        return new ChatMessage(channel, "", "player" + i, String.valueOf(i), LocalDateTime.of(2017, 11, 3, 12, 0, i % 60), "text " + i);
+    }
+
+    @Test
+    void classifiesChannelsTest() {
+        assertEquals(Lane.URGENT, Lane.of("private"));
+        assertEquals(Lane.URGENT, Lane.of("gc_123"));
+        assertEquals(Lane.URGENT, Lane.of("gco_123"));
+        assertEquals(Lane.NORMAL, Lane.of("trade"));
+        assertEquals(Lane.BULK, Lane.of("global-3"));
+    }
+
+    @Test
+    void urgentMessagesPassFloodedGlobalsTest() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<ChatMessage> delivered = new LinkedBlockingQueue<>();
+        Map<Lane, LaneBudget> budgets = new EnumMap<>(Lane.class);
+        budgets.put(Lane.BULK, new LaneBudget(10, 1, OverflowStrategy.DROP_OLDEST));
+        PriorityDispatcher dispatcher = new PriorityDispatcher(message -> {
+            if (Lane.of(message.getChannel()) == Lane.BULK) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            delivered.add(message);
+        }, budgets);
+
+        for (int i = 0; i < 100; i++) {
+            dispatcher.accept(message("global-1", i));
+        }
+        dispatcher.accept(message("private", 100));
+        dispatcher.accept(message("gc_42", 101));
+
+        // the global worker is still stuck on its first message
+        assertEquals("private", delivered.poll(5, TimeUnit.SECONDS).getChannel());
+        assertEquals("gc_42", delivered.poll(5, TimeUnit.SECONDS).getChannel());
+
+        release.countDown();
+        dispatcher.close();
+        assertEquals(2, dispatcher.getDelivered(Lane.URGENT));
+        assertTrue(dispatcher.getDropped(Lane.BULK) >= 89);
+        assertEquals(100 - dispatcher.getDropped(Lane.BULK), dispatcher.getDelivered(Lane.BULK));
+    }
+
+    @Test
+    void privateMessagesKeepTheirOrderTest() throws InterruptedException {
+        BlockingQueue<ChatMessage> delivered = new LinkedBlockingQueue<>();
+        PriorityDispatcher dispatcher = new PriorityDispatcher(delivered::add);
+
+        for (int i = 0; i < 200; i++) {
+            dispatcher.accept(new ChatMessage("private", "", "player", "7",
+                    LocalDateTime.of(2017, 11, 3, 12, 0), "text " + i));
+        }
+        dispatcher.close();
+
+        assertEquals(200, delivered.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals("text " + i, delivered.poll().getText());
+        }
+    }
+}
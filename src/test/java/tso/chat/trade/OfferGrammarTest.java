@@ -0,0 +1,85 @@
+package tso.chat.trade;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tso.chat.ChatMessage;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+class OfferGrammarTest {
+
+    private static OfferGrammar grammar;
+
+    @BeforeAll
+    static void setUp() {
+        Map<String, String> items = new HashMap<>();
+        items.put("granite", "granite");
+        items.put("гранит", "granite");
+        items.put("marble", "marble");
+        grammar = OfferGrammar.withDefaultKeywords(items);
+    }
+
+    private static ChatMessage message(String text) {
+        return new ChatMessage("trade", "", "Reax", "1", LocalDateTime.now(), text);
+    }
+
+    @Test
+    void parseSellOfferTest() {
+        Offer offer = grammar.parse(message("WTS Granite x500 for 1000"));
+        assertEquals(Offer.Side.SELL, offer.getSide());
+        assertEquals("granite", offer.getItem());
+        assertEquals(500, offer.getQuantity());
+        assertEquals(1000, offer.getPrice());
+        assertEquals(2.0, offer.getUnitPrice());
+    }
+
+    @Test
+    void parseBuyOfferTest() {
+        Offer offer = grammar.parse(message("куплю 200 гранит за 300"));
+        assertEquals(Offer.Side.BUY, offer.getSide());
+        assertEquals("granite", offer.getItem());
+        assertEquals(200, offer.getQuantity());
+        assertEquals(300, offer.getPrice());
+    }
+
+    @Test
+    void quantityIsNotThePriceTest() {
+        Offer offer = grammar.parse(message("selling marble for 50"));
+        assertEquals(1, offer.getQuantity());
+        assertEquals(50, offer.getPrice());
+    }
+
+    @Test
+    void notAnOfferTest() {
+        assertNull(grammar.parse(message("anyone has granite?")));
+        assertNull(grammar.parse(message("wts granite, pm me")));
+    }
+
+    @Test
+    void aggregatorTest() {
+        PriceAggregator aggregator = new PriceAggregator(Duration.ofHours(1));
+        LocalDateTime now = LocalDateTime.now();
+        long[] prices = {4, 1, 3, 2};
+        for (int i = 0; i < prices.length; i++) {
+            ChatMessage source = new ChatMessage("trade", "", "Reax", "1", now.minusMinutes(prices.length - i), "");
+            aggregator.accept(new Offer(Offer.Side.SELL, "granite", 1, prices[i], source));
+        }
+        // this one is out of the window by now
+        ChatMessage old = new ChatMessage("trade", "", "Reax", "1", now.minusHours(2), "");
+        aggregator.accept(new Offer(Offer.Side.SELL, "granite", 1, 100, old));
+
+        PriceStats stats = aggregator.getStats("granite", Offer.Side.SELL);
+        assertEquals(4, stats.getOffers());
+        assertEquals(1.0, stats.getMin());
+        assertEquals(4.0, stats.getMax());
+        assertEquals(2.5, stats.getMedian());
+        assertNull(aggregator.getStats("granite", Offer.Side.BUY));
+    }
+
+}